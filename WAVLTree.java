@@ -1,3 +1,43 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 public class WAVLTree_itayshalev_eyalpintzov {
 	
@@ -17,6 +57,24 @@ public class WAVLTree_itayshalev_eyalpintzov {
 		private WAVLNode externalNode;
 		private WAVLNode min;
 		private WAVLNode max;
+		// the node of the last fingerSearch or fingerInsert, null if unknown
+		private WAVLNode finger;
+		// null unless enableMetrics was called
+		private WAVLMetrics metrics;
+		// null unless setAggregate was called; then every node holds the aggregate of its subtree
+		private WAVLMonoid<Object> monoid;
+		
+		// below this many keys loadSorted builds a subtree sequentially
+		private static final int PARALLEL_BUILD_THRESHOLD = 1 << 13;
+		// below this many nodes in both trees union, intersection and difference run sequentially
+		private static final int PARALLEL_SET_THRESHOLD = 1 << 13;
+		// below this many keys insertAll and deleteAll insert or delete them one by one
+		private static final int SMALL_BATCH_THRESHOLD = 1 << 6;
+		// below this many nodes a subtree is exported, or a spliterator stops splitting, sequentially
+		private static final int PARALLEL_EXPORT_THRESHOLD = 1 << 12;
+		private static final int UNION = 0;
+		private static final int INTERSECTION = 1;
+		private static final int DIFFERENCE = 2;
 		
 		public WAVLTree()
 		{
@@ -46,9 +104,21 @@ public class WAVLTree_itayshalev_eyalpintzov {
 	   * otherwise, returns null
 	   */
 	  public String search(int k)
+	  {
+		  if(this.metrics == null)
+		  {
+			  return this.searchUntimed(k);
+		  }
+		  long start = System.nanoTime();
+		  String value = this.searchUntimed(k);
+		  this.metrics.searches.record(System.nanoTime() - start);
+		  return value;
+	  }
+	  
+	  private String searchUntimed(int k)
 	  {
 		  WAVLNode currentNode = this.root;
-		  while(currentNode.isInnerNode())
+		  while(currentNode != null && currentNode.isInnerNode())
 		  {
 			  if(currentNode.getKey() == k)
 			  {
@@ -75,56 +145,210 @@ public class WAVLTree_itayshalev_eyalpintzov {
 	   * returns -1 if an item with key k already exists in the tree.
 	   */
 	   public int insert(int k, String i) {
-		  WAVLNode parentToInsert;
+		  if(this.metrics == null)
+		  {
+			  return this.insertUntimed(k, i);
+		  }
+		  long start = System.nanoTime();
+		  int numRebalance = this.insertUntimed(k, i);
+		  this.metrics.inserts.record(System.nanoTime() - start);
+		  return numRebalance;
+	   }
+	   
+	   private int insertUntimed(int k, String i) {
+		  if(this.monoid != null)
+		  {// a monoid that rejects i throws here, before the tree is touched
+			  this.monoid.lift(k, i);
+		  }
 		  if(this.root == null)
 		  {
 			  this.root = new WAVLNode (k,i,this.getExternalNode());
+			  this.min = this.root;
+			  this.max = this.root;
+			  if(this.monoid != null)
+			  {
+				  this.root.updateAggregate(this.monoid);
+			  }
 			  return 0;
 		  }
-		  else
+		  
+		  // one descent, counting the new node into every subtree on the way down
+		  WAVLNode parentToInsert = this.root;
+		  while(true)
 		  {
-			  parentToInsert = this.root.placeToInsert(k);
-			  //System.out.println(parentToInsert.getKey());
-			  WAVLNode nodeToInsert = new WAVLNode(k,i,this.getExternalNode());
-			  if(parentToInsert == null)
-			  {
+			  int key = parentToInsert.getKey();
+			  if(key == k)
+			  {// undo the counting above the existing node
+				  for(WAVLNode currentNode = parentToInsert.getParent(); currentNode != null; currentNode = currentNode.getParent())
+				  {
+					  currentNode.setSubTreeSize(currentNode.getSubTreeSize()-1);
+				  }
 				  return -1;
 			  }
-			  if(this.min == null || k < this.min.getKey())
+			  parentToInsert.setSubTreeSize(parentToInsert.getSubTreeSize()+1);
+			  WAVLNode next = (k < key) ? parentToInsert.getLeft() : parentToInsert.getRight();
+			  if(!next.isInnerNode())
 			  {
-				  this.min = nodeToInsert;
-			  }
-			  if(this.max == null || k > this.max.getKey())
-			  {
-				  this.max = nodeToInsert;
-			  }
-			  if(parentToInsert.getKey() > k)
-			  {
-				  parentToInsert.setLeft(nodeToInsert);
-				  nodeToInsert.setParent(parentToInsert);
-			  }
-			  else
-			  {
-				  parentToInsert.setRight(nodeToInsert);
-				  nodeToInsert.setParent(parentToInsert);
+				  break;
 			  }
-			  
-			  WAVLNode currentNode = nodeToInsert;
-			  while(currentNode.getParent() != null)
+			  parentToInsert = next;
+		  }
+		  
+		  WAVLNode nodeToInsert = new WAVLNode(k,i,this.getExternalNode());
+		  nodeToInsert.setParent(parentToInsert);
+		  if(k < parentToInsert.getKey())
+		  {
+			  parentToInsert.setLeft(nodeToInsert);
+			  if(parentToInsert == this.min)
 			  {
-				  currentNode = currentNode.getParent();
-				  currentNode.setSubTreeSize(currentNode.getSubTreeSize()+1);
-				  //System.out.println("Changed " +currentNode.getKey()+ " To " + (currentNode.getSubTreeSize()));
+				  this.min = nodeToInsert;
 			  }
-			  
-			  int numRebalance = parentToInsert.rebalanceInsert();
-			  while(this.root.getParent() != null)
+		  }
+		  else
+		  {
+			  parentToInsert.setRight(nodeToInsert);
+			  if(parentToInsert == this.max)
 			  {
-				  //System.out.println(this.root.getKey());
-				  this.setRoot(this.root.getParent());
+				  this.max = nodeToInsert;
 			  }
-			  return numRebalance;
 		  }
+		  
+		  int numRebalance = parentToInsert.rebalanceInsert(this.metrics);
+		  // a rotation at the root hangs the old root under the new one
+		  if(this.root.getParent() != null)
+		  {
+			  this.setRoot(this.root.getParent());
+		  }
+		  if(this.monoid != null)
+		  {
+			  this.refreshAggregates(nodeToInsert);
+		  }
+		  return numRebalance;
+	   }
+	  
+	   /**
+	    * public String fingerSearch(int k)
+	    *
+	    * Same as search, but starts from the finger - the node of the last finger access -
+	    * or from min or max when k is outside the tree's key range, and climbs only until
+	    * k falls inside the current subtree's key range before descending.
+	    * Accesses close to the previous one (sequential scans, time ordered keys)
+	    * mostly cost O(log d) for a distance of d keys.
+	    */
+	   public String fingerSearch(int k)
+	   {
+		   WAVLNode node = this.fingerPlace(k);
+		   if(node == null || node.getKey() != k)
+		   {
+			   return null;
+		   }
+		   return node.getValue();
+	   }
+	   
+	   /**
+	    * public int fingerInsert(int k, String i)
+	    *
+	    * Same as insert, but finds the place to insert from the finger like fingerSearch.
+	    * Appending a key larger than all others starts at max and does no comparisons
+	    * besides the one with max. The subtree sizes of all ancestors still have to be updated.
+	    */
+	   public int fingerInsert(int k, String i)
+	   {
+		   WAVLNode parentToInsert = this.fingerPlace(k);
+		   if(parentToInsert == null)
+		   {
+			   int numRebalance = this.insert(k, i);
+			   this.finger = this.root;
+			   return numRebalance;
+		   }
+		   if(parentToInsert.getKey() == k)
+		   {
+			   return -1;
+		   }
+		   if(this.monoid != null)
+		   {
+			   this.monoid.lift(k, i);
+		   }
+		   
+		   WAVLNode nodeToInsert = new WAVLNode(k,i,this.getExternalNode());
+		   nodeToInsert.setParent(parentToInsert);
+		   if(k < parentToInsert.getKey())
+		   {
+			   parentToInsert.setLeft(nodeToInsert);
+			   if(parentToInsert == this.min)
+			   {
+				   this.min = nodeToInsert;
+			   }
+		   }
+		   else
+		   {
+			   parentToInsert.setRight(nodeToInsert);
+			   if(parentToInsert == this.max)
+			   {
+				   this.max = nodeToInsert;
+			   }
+		   }
+		   for(WAVLNode currentNode = parentToInsert; currentNode != null; currentNode = currentNode.getParent())
+		   {
+			   currentNode.setSubTreeSize(currentNode.getSubTreeSize()+1);
+		   }
+		   
+		   int numRebalance = parentToInsert.rebalanceInsert(this.metrics);
+		   if(this.root.getParent() != null)
+		   {
+			   this.setRoot(this.root.getParent());
+		   }
+		   if(this.monoid != null)
+		   {
+			   this.refreshAggregates(nodeToInsert);
+		   }
+		   this.finger = nodeToInsert;
+		   return numRebalance;
+	   }
+	   
+	   // returns the node with key k, or the node k would be hung under; null if the tree is empty
+	   private WAVLNode fingerPlace(int k)
+	   {
+		   if(this.root == null)
+		   {
+			   return null;
+		   }
+		   WAVLNode currentNode;
+		   if(k >= this.max.getKey())
+		   {// max has no right son
+			   currentNode = this.max;
+		   }
+		   else if(k <= this.min.getKey())
+		   {// min has no left son
+			   currentNode = this.min;
+		   }
+		   else
+		   {
+			   currentNode = (this.finger != null) ? this.finger : this.root;
+			   // climb until k is between the keys of the current node and its parent,
+			   // on the side the current node hangs - then k belongs in the current subtree
+			   while(currentNode.getParent() != null && currentNode.getKey() != k)
+			   {
+				   WAVLNode parent = currentNode.getParent();
+				   boolean isLeftSon = (parent.getLeft() == currentNode);
+				   if(k < currentNode.getKey() ? (!isLeftSon && parent.getKey() < k) : (isLeftSon && parent.getKey() > k))
+				   {
+					   break;
+				   }
+				   currentNode = parent;
+			   }
+		   }
+		   while(currentNode.getKey() != k)
+		   {
+			   WAVLNode next = (k < currentNode.getKey()) ? currentNode.getLeft() : currentNode.getRight();
+			   if(!next.isInnerNode())
+			   {
+				   break;
+			   }
+			   currentNode = next;
+		   }
+		   this.finger = currentNode;
+		   return currentNode;
 	   }
 	  
 	   /**
@@ -137,7 +361,104 @@ public class WAVLTree_itayshalev_eyalpintzov {
 	   */
 	   public int delete(int k)
 	   {
-		   return 42;   // to be replaced by student code
+		   if(this.metrics == null)
+		   {
+			   return this.deleteUntimed(k);
+		   }
+		   long start = System.nanoTime();
+		   int numRebalance = this.deleteUntimed(k);
+		   this.metrics.deletes.record(System.nanoTime() - start);
+		   return numRebalance;
+	   }
+	   
+	   private int deleteUntimed(int k)
+	   {
+		   WAVLNode nodeToDelete = this.searchNode(k);
+		   if(nodeToDelete == null)
+		   {
+			   return -1;
+		   }
+		   if(nodeToDelete == this.min)
+		   {
+			   this.min = nodeToDelete.successor();
+		   }
+		   if(nodeToDelete == this.max)
+		   {
+			   this.max = nodeToDelete.predecessor();
+		   }
+		   if(nodeToDelete == this.finger)
+		   {
+			   this.finger = null;
+		   }
+		   if(nodeToDelete.getLeft().isInnerNode() && nodeToDelete.getRight().isInnerNode())
+		   {
+			   WAVLNode successor = nodeToDelete.successor();
+			   nodeToDelete.swapWithSuccessor(successor);
+			   if(this.root == nodeToDelete)
+			   {
+				   this.setRoot(successor);
+			   }
+		   }
+		   
+		   // nodeToDelete has at most one inner son now
+		   WAVLNode son = nodeToDelete.getLeft().isInnerNode() ? nodeToDelete.getLeft() : nodeToDelete.getRight();
+		   WAVLNode parent = nodeToDelete.getParent();
+		   nodeToDelete.replaceInParent(son);
+		   nodeToDelete.setParent(null);
+		   nodeToDelete.setLeft(this.getExternalNode());
+		   nodeToDelete.setRight(this.getExternalNode());
+		   if(parent == null)
+		   {
+			   this.setRoot(son.isInnerNode() ? son : null);
+			   return 0;
+		   }
+		   
+		   WAVLNode currentNode = parent;
+		   while(currentNode != null)
+		   {
+			   currentNode.setSubTreeSize(currentNode.getSubTreeSize()-1);
+			   currentNode = currentNode.getParent();
+		   }
+		   
+		   int numRebalance = parent.rebalanceDelete(this.metrics);
+		   WAVLNode newRoot = parent;
+		   while(newRoot.getParent() != null)
+		   {
+			   newRoot = newRoot.getParent();
+		   }
+		   this.setRoot(newRoot);
+		   if(this.monoid != null)
+		   {
+			   this.refreshAggregates(parent);
+		   }
+		   return numRebalance;
+	   }
+	   
+	   /**
+	    * public WAVLNode searchNode(int k)
+	    *
+	    * returns the node with key k if it exists in the tree
+	    * otherwise, returns null
+	    */
+	   public WAVLNode searchNode(int k)
+	   {
+		   WAVLNode currentNode = this.root;
+		   while(currentNode != null && currentNode.isInnerNode())
+		   {
+			   if(currentNode.getKey() == k)
+			   {
+				   return currentNode;
+			   }
+			   else if(currentNode.getKey() > k)
+			   {
+				   currentNode = currentNode.getLeft();
+			   }
+			   else
+			   {
+				   currentNode = currentNode.getRight();
+			   }
+		   }
+		   return null;
 	   }
 
 	   /**
@@ -200,9 +521,55 @@ public class WAVLTree_itayshalev_eyalpintzov {
 			   return new String[0];
 		   }
 		   String[] arr = new String[this.size()];
-		   int[] count = new int[1];
-		   count[0] = 0;
-		   return this.root.infoToArray(arr, count); 
+		   return this.root.infoToArray(arr, 0); 
+	   }
+	   
+	   /**
+	    * public int[] keysToArray(boolean parallel)
+	    *
+	    * Returns a sorted array which contains all keys in the tree, like keysToArray().
+	    * With parallel set, subtrees of at least PARALLEL_EXPORT_THRESHOLD nodes are
+	    * written in the common fork-join pool; every subtree's place in the array is known
+	    * from the subtree sizes, so they need no coordination.
+	    */
+	   public int[] keysToArray(boolean parallel)
+	   {
+		   if(!parallel || this.size() < PARALLEL_EXPORT_THRESHOLD)
+		   {
+			   return this.keysToArray();
+		   }
+		   int[] arr = new int[this.size()];
+		   ForkJoinPool.commonPool().invoke(new ExportTask(this.root, 0, arr, null));
+		   return arr;
+	   }
+	   
+	   /**
+	    * public String[] infoToArray(boolean parallel)
+	    *
+	    * Returns an array which contains all info in the tree, sorted by their respective keys,
+	    * like infoToArray(). With parallel set it is filled as in keysToArray(boolean).
+	    */
+	   public String[] infoToArray(boolean parallel)
+	   {
+		   if(!parallel || this.size() < PARALLEL_EXPORT_THRESHOLD)
+		   {
+			   return this.infoToArray();
+		   }
+		   String[] arr = new String[this.size()];
+		   ForkJoinPool.commonPool().invoke(new ExportTask(this.root, 0, null, arr));
+		   return arr;
+	   }
+
+	   /**
+	    * public FrozenWAVLTree freeze()
+	    *
+	    * Returns an immutable, cache friendly copy of the tree for read mostly use, built in O(n).
+	    * Later changes to this tree do not affect it. See FrozenWAVLTree.
+	    *
+	    */
+	   public FrozenWAVLTree freeze()
+	   {
+		   return new FrozenWAVLTree(this.keysToArray(), this.infoToArray());
 	   }
 
 	   /**
@@ -220,433 +587,8948 @@ public class WAVLTree_itayshalev_eyalpintzov {
 		  return root.getSubTreeSize();
 	   }
 	   
-	     /**
-	    * public WAVLNode getRoot()
+	   /**
+	    * public WAVLMetrics enableMetrics()
 	    *
-	    * Returns the root WAVL node, or null if the tree is empty
+	    * Starts counting rebalance steps and timing search, insert and delete,
+	    * and returns the metrics object. Does nothing but return it if metrics are already enabled.
+	    * Until this is called the tree pays a single null check per operation.
 	    *
 	    */
-	   public WAVLNode getRoot()
+	   public WAVLMetrics enableMetrics()
 	   {
-		   return this.root;
+		   if(this.metrics == null)
+		   {
+			   this.metrics = new WAVLMetrics(this);
+		   }
+		   return this.metrics;
 	   }
 	   
 	   /**
-	    * public WAVLNode getExternalNode()
+	    * public void disableMetrics()
 	    *
-	    * Returns the External WAVL node.
+	    * Stops collecting metrics. A metrics object returned earlier keeps its counts.
 	    *
 	    */
-	   public WAVLNode getExternalNode()
+	   public void disableMetrics()
 	   {
-		   return this.externalNode;
+		   this.metrics = null;
 	   }
 	   
-
-	     /**
-	    * public WAVLNode setRoot()
+	   /**
+	    * public WAVLMetrics getMetrics()
 	    *
-	    * Change the tree's root to the new root.
+	    * Returns the metrics of the tree, or null if they are not enabled.
 	    *
 	    */
-	   public void setRoot(WAVLNode root)
+	   public WAVLMetrics getMetrics()
 	   {
-		   this.root = root;
+		   return this.metrics;
 	   }
 	   
-	     /**
-	    * public int select(int i)
+	   /**
+	    * public int height()
 	    *
-	    * Returns the value of the i'th smallest key (return -1 if tree is empty)
-	    * Example 1: select(1) returns the value of the node with minimal key 
-	        * Example 2: select(size()) returns the value of the node with maximal key 
-	        * Example 3: select(2) returns the value 2nd smallest minimal node, i.e the value of the node minimal node's successor  
+	    * Returns the height of the tree, -1 if the tree is empty. Walks the whole tree.
 	    *
-	    */   
-	   public String select(int i)
-	   {		   
-		   String[] arr = this.infoToArray();
-		   if(i > arr.length)
+	    */
+	   public int height()
+	   {
+		   if(this.root == null)
 		   {
-			   return "-1";
+			   return -1;
 		   }
-		   return arr[i-1];
+		   return this.root.height();
 	   }
-
+	   
 	   /**
-	   * public class WAVLNode
-	   */
-	   public class WAVLNode{
-		   private int key;
-		   private String value;
-		   private int rank;
-		   private WAVLNode parent;
-		   private WAVLNode leftSon;
-		   private WAVLNode rightSon;
-		   private boolean isExternal;
-		   private int subTreeSize;
-		   
-		   public WAVLNode(int key, String value ,WAVLNode externalNode)
+	    * public long[] rankDifferences()
+	    *
+	    * Returns an array whose d'th entry is the number of parent-child edges with rank difference d.
+	    * In a WAVL tree only entries 1 and 2 are nonzero. Walks the whole tree.
+	    *
+	    */
+	   public long[] rankDifferences()
+	   {
+		   long[] counts = new long[3];
+		   if(this.root != null)
 		   {
-			   this.key = key;
-			   this.value = value;
-			   this.rank = 0;
-			   this.leftSon = externalNode;
-			   this.rightSon = externalNode;
-			   this.isExternal = false;
-			   this.subTreeSize = 1;
+			   this.root.countRankDifferences(counts);
 		   }
-		   
-		   public int getKey()
+		   return counts;
+	   }
+	   
+	   /**
+	    * public <A> void setAggregate(WAVLMonoid<A> monoid)
+	    *
+	    * Makes every node keep the aggregate, under monoid, of the items in its subtree,
+	    * so that aggregate(monoid, lo, hi) takes O(log n). The aggregates are computed now in O(n)
+	    * and then kept up to date through insert, delete, join, split and the set operations,
+	    * at the cost of O(log n) monoid operations per update. null turns aggregates off.
+	    * If monoid throws on an item, so does setAggregate, and the tree keeps its old monoid.
+	    *
+	    */
+	   @SuppressWarnings("unchecked")
+	   public <A> void setAggregate(WAVLMonoid<A> monoid)
+	   {
+		   WAVLMonoid<Object> previous = this.monoid;
+		   if(monoid != null && this.root != null)
 		   {
-			   return this.key; 
+			   try
+			   {
+				   this.root.updateAggregates((WAVLMonoid<Object>) monoid);
+			   }
+			   catch(RuntimeException e)
+			   {
+				   if(previous != null)
+				   {
+					   this.root.updateAggregates(previous);
+				   }
+				   throw e;
+			   }
 		   }
-		   
-		   public String getValue()
+		   this.monoid = (WAVLMonoid<Object>) monoid;
+	   }
+	   
+	   /**
+	    * public <A> A aggregate(WAVLMonoid<A> monoid)
+	    *
+	    * Returns the aggregate of all items in the tree, in O(log n).
+	    * monoid must be the one passed to setAggregate.
+	    *
+	    */
+	   public <A> A aggregate(WAVLMonoid<A> monoid)
+	   {
+		   return this.aggregate(monoid, Integer.MIN_VALUE, Integer.MAX_VALUE, true);
+	   }
+	   
+	   /**
+	    * public <A> A aggregate(WAVLMonoid<A> monoid, int lo, int hi)
+	    *
+	    * Returns the aggregate of the items with lo <= key < hi in key order, in O(log n),
+	    * combining the stored aggregates of the O(log n) subtrees that make up the range.
+	    * monoid must be the one passed to setAggregate.
+	    *
+	    */
+	   public <A> A aggregate(WAVLMonoid<A> monoid, int lo, int hi)
+	   {
+		   return this.aggregate(monoid, lo, hi, false);
+	   }
+	   
+	   @SuppressWarnings("unchecked")
+	   private <A> A aggregate(WAVLMonoid<A> monoid, int lo, int hi, boolean inclusive)
+	   {
+		   if(monoid == null || monoid != (Object) this.monoid)
 		   {
-			   return this.value;
+			   throw new IllegalArgumentException("the tree keeps no aggregates for this monoid, see setAggregate");
 		   }
-		   
-		   public WAVLNode getLeft()
+		   // descend to the highest node inside the range, where the paths to lo and hi part
+		   WAVLNode node = this.root;
+		   while(node != null && node.isInnerNode())
 		   {
-			   return this.leftSon;
-		   }
-		   
-		   public WAVLNode getRight()
-		   {
-			   return this.rightSon;
+			   if(node.getKey() < lo)
+			   {
+				   node = node.getRight();
+			   }
+			   else if(node.getKey() > hi || (node.getKey() == hi && !inclusive))
+			   {
+				   node = node.getLeft();
+			   }
+			   else
+			   {
+				   break;
+			   }
 		   }
-		   
-		   public boolean getIsExternal()
+		   if(node == null || !node.isInnerNode())
 		   {
-			   return this.isExternal;
+			   return monoid.identity();
 		   }
+		   Object result = this.monoid.lift(node.getKey(), node.getValue());
 		   
-		   public WAVLNode getParent()
+		   // keys >= lo in the left subtree: every node on the way to lo that is in range brings its right subtree along
+		   for(WAVLNode currentNode = node.getLeft(); currentNode.isInnerNode(); )
 		   {
-			   return this.parent;
+			   if(currentNode.getKey() >= lo)
+			   {
+				   Object part = this.monoid.lift(currentNode.getKey(), currentNode.getValue());
+				   if(currentNode.getRight().isInnerNode())
+				   {
+					   part = this.monoid.combine(part, currentNode.getRight().getAggregate());
+				   }
+				   result = this.monoid.combine(part, result);
+				   currentNode = currentNode.getLeft();
+			   }
+			   else
+			   {
+				   currentNode = currentNode.getRight();
+			   }
 		   }
-		   
-		   public int getRank()
+		   // keys below hi in the right subtree, symmetrically
+		   for(WAVLNode currentNode = node.getRight(); currentNode.isInnerNode(); )
 		   {
-			   return this.rank;
+			   if(currentNode.getKey() < hi || (currentNode.getKey() == hi && inclusive))
+			   {
+				   Object part = this.monoid.lift(currentNode.getKey(), currentNode.getValue());
+				   if(currentNode.getLeft().isInnerNode())
+				   {
+					   part = this.monoid.combine(currentNode.getLeft().getAggregate(), part);
+				   }
+				   result = this.monoid.combine(result, part);
+				   currentNode = currentNode.getRight();
+			   }
+			   else
+			   {
+				   currentNode = currentNode.getLeft();
+			   }
 		   }
-		   
-		   public int getSubTreeSize()
+		   return (A) result;
+	   }
+	   
+	     /**
+	    * public WAVLNode getRoot()
+	    *
+	    * Returns the root WAVL node, or null if the tree is empty
+	    *
+	    */
+	   public WAVLNode getRoot()
+	   {
+		   return this.root;
+	   }
+	   
+	   /**
+	    * public WAVLNode getExternalNode()
+	    *
+	    * Returns the External WAVL node.
+	    *
+	    */
+	   public WAVLNode getExternalNode()
+	   {
+		   return this.externalNode;
+	   }
+	   
+
+	     /**
+	    * public WAVLNode setRoot()
+	    *
+	    * Change the tree's root to the new root.
+	    *
+	    */
+	   public void setRoot(WAVLNode root)
+	   {
+		   this.root = root;
+	   }
+	   
+	     /**
+	    * public int select(int i)
+	    *
+	    * Returns the value of the i'th smallest key (return -1 if tree is empty)
+	    * Example 1: select(1) returns the value of the node with minimal key 
+	        * Example 2: select(size()) returns the value of the node with maximal key 
+	        * Example 3: select(2) returns the value 2nd smallest minimal node, i.e the value of the node minimal node's successor  
+	    *
+	    */   
+	   public String select(int i)
+	   {
+		   WAVLNode node = this.selectNode(i);
+		   if(node == null)
 		   {
-			   return this.subTreeSize;
+			   return "-1";
 		   }
-		   
-		   public void setValue(String value)
+		   return node.getValue();
+	   }
+
+	   /**
+	    * public WAVLNode selectNode(int i)
+	    *
+	    * Returns the node holding the i'th smallest key, or null if i is out of range.
+	    * Descends from the root by subtree sizes, so it runs in O(log n) without allocating.
+	    *
+	    */
+	   public WAVLNode selectNode(int i)
+	   {
+		   if(i < 1 || i > this.size())
 		   {
-			   if(!this.isExternal)
-			   {
-				   this.value = value;
-			   }               
+			   return null;
 		   }
-		   
-		   public void setRank(int rank)
+		   WAVLNode currentNode = this.root;
+		   while(currentNode.isInnerNode())
 		   {
-			   if(!this.isExternal)
+			   int leftSize = currentNode.getLeft().getSubTreeSize();
+			   if(i == leftSize + 1)
 			   {
-				   this.rank = rank;
+				   return currentNode;
+			   }
+			   else if(i <= leftSize)
+			   {
+				   currentNode = currentNode.getLeft();
+			   }
+			   else
+			   {
+				   i -= leftSize + 1;
+				   currentNode = currentNode.getRight();
 			   }
 		   }
-		   
-		   public void setParent(WAVLNode parent)
+		   return null;
+	   }
+
+	   /**
+	    * public int rank(int k)
+	    *
+	    * Returns the position of key k in the sorted order of the tree's keys,
+	    * so that select(rank(k)) returns search(k).
+	    * Example: rank of the minimal key is 1, rank of the maximal key is size().
+	    * Returns -1 if an item with key k does not exist in the tree.
+	    *
+	    */
+	   public int rank(int k)
+	   {
+		   if(this.root == null)
 		   {
-			   this.parent = parent;
+			   return -1;
 		   }
-		   
-		   public void setRight(WAVLNode rightSon)
+		   int position = 0;
+		   WAVLNode currentNode = this.root;
+		   while(currentNode.isInnerNode())
 		   {
-			   if(!this.isExternal)
+			   if(currentNode.getKey() == k)
 			   {
-				   this.rightSon = rightSon;
+				   return position + currentNode.getLeft().getSubTreeSize() + 1;
+			   }
+			   else if(currentNode.getKey() > k)
+			   {
+				   currentNode = currentNode.getLeft();
+			   }
+			   else
+			   {
+				   position += currentNode.getLeft().getSubTreeSize() + 1;
+				   currentNode = currentNode.getRight();
 			   }
 		   }
-		   
-		   public void setLeft(WAVLNode leftSon)
+		   return -1;
+	   }
+
+	   /**
+	    * public WAVLNode ceiling(int k)
+	    *
+	    * Returns the node with the smallest key >= k, or null if there is none.
+	    */
+	   public WAVLNode ceiling(int k)
+	   {
+		   return this.bound(k, true, true);
+	   }
+	   
+	   /**
+	    * public WAVLNode floor(int k)
+	    *
+	    * Returns the node with the largest key <= k, or null if there is none.
+	    */
+	   public WAVLNode floor(int k)
+	   {
+		   return this.bound(k, false, true);
+	   }
+	   
+	   /**
+	    * public WAVLNode successor(int k)
+	    *
+	    * Returns the node with the smallest key > k, or null if there is none.
+	    * k does not have to be in the tree.
+	    */
+	   public WAVLNode successor(int k)
+	   {
+		   return this.bound(k, true, false);
+	   }
+	   
+	   /**
+	    * public WAVLNode predecessor(int k)
+	    *
+	    * Returns the node with the largest key < k, or null if there is none.
+	    * k does not have to be in the tree.
+	    */
+	   public WAVLNode predecessor(int k)
+	   {
+		   return this.bound(k, false, false);
+	   }
+	   
+	   // one descent, remembering the last node passed on the wanted side of k
+	   private WAVLNode bound(int k, boolean above, boolean inclusive)
+	   {
+		   WAVLNode best = null;
+		   WAVLNode currentNode = this.root;
+		   while(currentNode != null && currentNode.isInnerNode())
 		   {
-			   if(!this.isExternal)
+			   int key = currentNode.getKey();
+			   if(key == k && inclusive)
 			   {
-				   this.leftSon = leftSon;
+				   return currentNode;
+			   }
+			   if(above ? key > k : key < k)
+			   {
+				   best = currentNode;
+				   currentNode = above ? currentNode.getLeft() : currentNode.getRight();
+			   }
+			   else
+			   {
+				   currentNode = above ? currentNode.getRight() : currentNode.getLeft();
 			   }
 		   }
-		   
-		   public void setSubTreeSize(int size)
+		   return best;
+	   }
+	   
+	   /**
+	    * public int rangeCount(int lo, int hi)
+	    *
+	    * Returns the number of keys k in the tree with lo <= k < hi, in O(log n) using subtree sizes.
+	    */
+	   public int rangeCount(int lo, int hi)
+	   {
+		   if(hi <= lo)
 		   {
-			   if(!this.isExternal)
+			   return 0;
+		   }
+		   return this.countSmaller(hi) - this.countSmaller(lo);
+	   }
+	   
+	   // the number of keys smaller than k
+	   private int countSmaller(int k)
+	   {
+		   int count = 0;
+		   WAVLNode currentNode = this.root;
+		   while(currentNode != null && currentNode.isInnerNode())
+		   {
+			   if(currentNode.getKey() < k)
 			   {
-				   this.subTreeSize = size;
+				   count += currentNode.getLeft().getSubTreeSize() + 1;
+				   currentNode = currentNode.getRight();
+			   }
+			   else
+			   {
+				   currentNode = currentNode.getLeft();
 			   }
 		   }
+		   return count;
+	   }
+	   
+	   /**
+	    * public Cursor cursor(boolean reverse)
+	    *
+	    * Returns a cursor over all nodes, in increasing key order or in decreasing order if reverse.
+	    */
+	   public Cursor cursor(boolean reverse)
+	   {
+		   return new Cursor(reverse ? this.max : this.min, reverse);
+	   }
+	   
+	   /**
+	    * public Cursor cursorFrom(int k, boolean reverse)
+	    *
+	    * Returns a cursor starting at the first node with key >= k, or with key <= k if reverse.
+	    */
+	   public Cursor cursorFrom(int k, boolean reverse)
+	   {
+		   Cursor cursor = new Cursor(null, reverse);
+		   cursor.seek(k);
+		   return cursor;
+	   }
+	   
+	   /**
+	    * public class Cursor
+	    *
+	    * A lazy in-order walk over the tree's nodes. Each step goes to the node's successor
+	    * (or predecessor), so scanning k nodes from a start found in O(log n) costs O(log n + k)
+	    * and nothing is copied. The tree must not be changed while the cursor is used.
+	    */
+	   public class Cursor implements Iterator<WAVLNode>
+	   {
+		   private WAVLNode nextNode;
+		   private final boolean reverse;
 		   
-		   public boolean isInnerNode()
+		   private Cursor(WAVLNode first, boolean reverse)
 		   {
-			   return !isExternal;
+			   this.nextNode = first;
+			   this.reverse = reverse;
 		   }
 		   
-		   public String toString()
+		   public boolean hasNext()
 		   {
-			   String st = "";
-			   st += "key = " + key + ", value = " + value + ", rank " + rank +", parentKey = " + "parent.getKey()" + ", leftKey = " + "leftSon.getKey()" + ", rightKey = " + "rightSon.getKey()" + ", isExternal = " + isExternal + ", size = " + this.subTreeSize; 
-			   return st;
+			   return this.nextNode != null;
 		   }
 		   
-		   public int[] keysToArray(int[] arr, int currentIndex)
+		   public WAVLNode next()
 		   {
-			   if(this.getLeft().isExternal && this.getRight().isExternal)
+			   WAVLNode node = this.nextNode;
+			   if(node == null)
 			   {
-				   arr[currentIndex] = this.getKey();
-				   return arr;
+				   throw new NoSuchElementException();
 			   }
-			   this.getLeft().keysToArray(arr, currentIndex);
-			   currentIndex += this.getLeft().getSubTreeSize();
-			   arr[currentIndex] = this.getKey();
-			   currentIndex++;
-			   this.getRight().keysToArray(arr, currentIndex);
-			   return arr;
+			   this.nextNode = this.reverse ? node.predecessor() : node.successor();
+			   return node;
 		   }
 		   
-		   public String[] infoToArray(String[] arr, int[] currentIndex)//changed
+		   /**
+		    * public void seek(int k)
+		    *
+		    * Moves the cursor to the first node with key >= k, or with key <= k for a reverse cursor.
+		    */
+		   public void seek(int k)
 		   {
-			   if(this.getLeft().isExternal && this.getRight().isExternal)
-			   {
-				   arr[currentIndex[0]] = this.getValue();
-				   currentIndex[0]++;
-				   return arr;
-			   }
-			   if(!this.getLeft().isExternal)
+			   this.nextNode = this.reverse ? floor(k) : ceiling(k);
+		   }
+	   }
+
+	   /**
+	    * public Spliterator<WAVLNode> spliterator()
+	    *
+	    * Returns a spliterator over all nodes in increasing key order. It covers a range of positions,
+	    * so it knows its exact size and splits into two exact halves (SIZED and SUBSIZED);
+	    * each part finds its first node with selectNode and walks on by successors.
+	    * The tree must not be changed while the spliterator is used.
+	    */
+	   public Spliterator<WAVLNode> spliterator()
+	   {
+		   return new NodeSpliterator(1, this.size() + 1);
+	   }
+	   
+	   /**
+	    * public Stream<WAVLNode> stream()
+	    *
+	    * Returns a sequential stream of all nodes in increasing key order, see spliterator().
+	    * stream().parallel() splits the tree evenly over the common fork-join pool.
+	    */
+	   public Stream<WAVLNode> stream()
+	   {
+		   return StreamSupport.stream(this.spliterator(), false);
+	   }
+	   
+	   private class NodeSpliterator implements Spliterator<WAVLNode>
+	   {
+		   // the positions from..to-1 are left to visit, nextNode is at position from once found
+		   private int from;
+		   private final int to;
+		   private WAVLNode nextNode;
+		   
+		   NodeSpliterator(int from, int to)
+		   {
+			   this.from = from;
+			   this.to = to;
+		   }
+		   
+		   public boolean tryAdvance(Consumer<? super WAVLNode> action)
+		   {
+			   if(this.from >= this.to)
 			   {
-				   this.getLeft().infoToArray(arr, currentIndex);
-				   //currentIndex += this.getLeft().getSubTreeSize();
+				   return false;
 			   }
-			   arr[currentIndex[0]] = this.getValue();
-			   currentIndex[0]++;
-			   if(!this.getRight().isExternal)
+			   if(this.nextNode == null)
 			   {
-				   this.getRight().infoToArray(arr, currentIndex);
+				   this.nextNode = selectNode(this.from);
 			   }
-			   return arr;
+			   WAVLNode node = this.nextNode;
+			   this.from++;
+			   this.nextNode = (this.from < this.to) ? node.successor() : null;
+			   action.accept(node);
+			   return true;
 		   }
 		   
-		   public WAVLNode placeToInsert(int key)//tiud
+		   public void forEachRemaining(Consumer<? super WAVLNode> action)
 		   {
-			   if(key == this.getKey())
-			   {
-				   return null;
-			   }
-			   if(key < this.getKey())
+			   if(this.from >= this.to)
 			   {
-				   if(this.getLeft().isExternal)
-				   {
-					   return this;
-				   }
-				   return this.getLeft().placeToInsert(key);
+				   return;
 			   }
-			   else
+			   WAVLNode node = (this.nextNode != null) ? this.nextNode : selectNode(this.from);
+			   int remaining = this.to - this.from;
+			   this.from = this.to;
+			   this.nextNode = null;
+			   for(int j = 0; j < remaining; j++)
 			   {
-				   if(this.getRight().isExternal)
+				   action.accept(node);
+				   if(j + 1 < remaining)
 				   {
-					   return this;
+					   node = node.successor();
 				   }
-				   return this.getRight().placeToInsert(key);   
 			   }
 		   }
 		   
-		   public int rebalanceInsert()
+		   public Spliterator<WAVLNode> trySplit()
 		   {
-			   int thisRank = this.getRank();
-			   WAVLNode left = this.getLeft();
-			   WAVLNode right = this.getRight();	
-			   WAVLNode parent = this.getParent();
-			   int leftDiffRank = thisRank - left.getRank();
-			   int rightDiffRank = thisRank - right.getRank();
-			   
-			   if(((leftDiffRank <= 2) && (leftDiffRank > 0)) && ((rightDiffRank <= 2) && (rightDiffRank > 0)))
+			   if(this.to - this.from < PARALLEL_EXPORT_THRESHOLD)
 			   {
-				   return 0;
+				   return null;
 			   }
-			   if((leftDiffRank == 0 && rightDiffRank==1) || (leftDiffRank == 1 && rightDiffRank==0))
-			   {//promote
-				   this.setRank(thisRank + 1);
-				   if(parent == null)
-				   {
-					   return 1;
-				   }
-				   return 1 + parent.rebalanceInsert();
+			   int middle = (this.from + this.to) >>> 1;
+			   NodeSpliterator prefix = new NodeSpliterator(this.from, middle);
+			   prefix.nextNode = this.nextNode;
+			   this.from = middle;
+			   this.nextNode = null;
+			   return prefix;
+		   }
+		   
+		   public long estimateSize()
+		   {
+			   return this.to - this.from;
+		   }
+		   
+		   public int characteristics()
+		   {
+			   return Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.SIZED | Spliterator.SUBSIZED;
+		   }
+	   }
+
+	   /**
+	    * public void loadSorted(int[] keys, String[] values, boolean parallel)
+	    *
+	    * Replaces the content of the tree by the items (keys[j], values[j]).
+	    * keys must be strictly increasing and values as long as keys.
+	    * The tree is built bottom up in O(n), every node gets the rank of its height,
+	    * which is a valid WAVL tree since sibling subtrees differ in size by at most one.
+	    * With parallel set, subtrees of at least PARALLEL_BUILD_THRESHOLD keys are
+	    * built in the common fork-join pool.
+	    */
+	   public void loadSorted(int[] keys, String[] values, boolean parallel)
+	   {
+		   if(keys.length != values.length)
+		   {
+			   throw new IllegalArgumentException("got " + keys.length + " keys but " + values.length + " values");
+		   }
+		   for(int j = 1; j < keys.length; j++)
+		   {
+			   if(keys[j - 1] >= keys[j])
+			   {
+				   throw new IllegalArgumentException("keys are not strictly increasing at index " + j);
 			   }
-			   
-			   if(leftDiffRank == 0)
-			   { 
-				   WAVLNode leftLeft = left.getLeft();
-				   WAVLNode leftRight = left.getRight();
-				   if(left.getRank() - leftLeft.getRank() == 1)// one rotate - case2
-				   {
-					   if(parent != null)
-					   {
-						   left.setParent(parent);
-						   if(parent.getKey() < this.getKey())
-						   {
-							   parent.setRight(left);
-						   }
-						   else 
-						   {
-							   parent.setLeft(left);
-						   }
-					   }
-					   else 
-					   {
-						   left.setParent(null);
-					   }
-					   this.setParent(left);
-					   left.setRight(this);
-					   this.setRank(thisRank - 1);
-					   this.setLeft(leftRight);
-					   leftRight.setParent(this);
-					   
-					   //System.out.println("Changed " +this.getKey()+ " To " + (this.getSubTreeSize() - left.getSubTreeSize() + leftRight.getSubTreeSize()));
-					   this.setSubTreeSize(this.getSubTreeSize() - left.getSubTreeSize() + leftRight.getSubTreeSize()); //z
-					   //System.out.println("Changed " +left.getKey()+ " To " + (left.getSubTreeSize() - leftRight.getSubTreeSize() + this.getSubTreeSize()));
-					   left.setSubTreeSize(left.getSubTreeSize() - leftRight.getSubTreeSize() + this.getSubTreeSize()); //x
-					   
-					   
-					   return 1;
-				   }
-				   else//double rotate - case3
-				   {
-					   //System.out.println("here: " + leftLeft);
-					   WAVLNode leftRightLeft = leftRight.getLeft();
-					   WAVLNode leftRightRight = leftRight.getRight();
-					   if(parent != null)
-					   {
-						   leftRight.setParent(parent);
-						   if(parent.getKey() < this.getKey())
-						   {
-							   parent.setRight(leftRight);
-						   }
-						   else 
-						   {
-							   parent.setLeft(leftRight);
-						   }
-					   }
-					   else 
-					   {
-						   leftRight.setParent(null);
-					   }
-					   this.setParent(leftRight);
-					   leftRight.setRight(this);
-					   this.setLeft(leftRightRight);
-					   leftRightRight.setParent(this);
-					   leftRight.setLeft(left);
-					   left.setParent(leftRight);
-					   left.setRight(leftRightLeft);
-					   leftRightLeft.setParent(left);
-					   left.setRank(left.getRank() - 1);
-					   this.setRank(thisRank - 1);
-					   leftRight.setRank(leftRight.getRank() + 1);
-					   
-					   //System.out.println("Changed " +this.getKey()+ " To " + (this.getSubTreeSize() - left.getSubTreeSize() + leftRightRight.getSubTreeSize()));
-					   this.setSubTreeSize(this.getSubTreeSize() - left.getSubTreeSize() + leftRightRight.getSubTreeSize()); //z
-					   //System.out.println("Changed " +left.getKey()+ " To " + (left.getSubTreeSize() - leftRight.getSubTreeSize() + leftRightLeft.getSubTreeSize()));
-					   left.setSubTreeSize(left.getSubTreeSize() - leftRight.getSubTreeSize() + leftRightLeft.getSubTreeSize()); //x
-					   //System.out.println("Changed " +leftRight.getKey()+ " To " + (left.getSubTreeSize() + this.getSubTreeSize() + 1));
-					   leftRight.setSubTreeSize(left.getSubTreeSize() + this.getSubTreeSize() + 1); //b
-					   					   
-					   return 2;
-				   }
-				   
+		   }
+		   this.finger = null;
+		   if(keys.length == 0)
+		   {
+			   this.setRoot(null);
+			   this.min = null;
+			   this.max = null;
+			   return;
+		   }
+		   WAVLNode newRoot;
+		   if(parallel)
+		   {
+			   newRoot = ForkJoinPool.commonPool().invoke(new BuildTask(keys, values, 0, keys.length));
+		   }
+		   else
+		   {
+			   newRoot = this.buildSorted(keys, values, 0, keys.length);
+		   }
+		   newRoot.setParent(null);
+		   this.setRoot(newRoot);
+		   this.min = newRoot;
+		   while(this.min.getLeft().isInnerNode())
+		   {
+			   this.min = this.min.getLeft();
+		   }
+		   this.max = newRoot;
+		   while(this.max.getRight().isInnerNode())
+		   {
+			   this.max = this.max.getRight();
+		   }
+	   }
+	   
+	   // builds a balanced subtree of keys[from..to) and returns its root, the external node if empty
+	   private WAVLNode buildSorted(int[] keys, String[] values, int from, int to)
+	   {
+		   if(from >= to)
+		   {
+			   return this.getExternalNode();
+		   }
+		   int middle = (from + to) >>> 1;
+		   return this.joinBuilt(keys[middle], values[middle], this.buildSorted(keys, values, from, middle), this.buildSorted(keys, values, middle + 1, to));
+	   }
+	   
+	   private WAVLNode joinBuilt(int key, String value, WAVLNode left, WAVLNode right)
+	   {
+		   WAVLNode node = new WAVLNode(key, value, this.getExternalNode());
+		   node.setLeft(left);
+		   node.setRight(right);
+		   if(left.isInnerNode())
+		   {
+			   left.setParent(node);
+		   }
+		   if(right.isInnerNode())
+		   {
+			   right.setParent(node);
+		   }
+		   node.setRank(Math.max(left.getRank(), right.getRank()) + 1);
+		   node.updateSubTreeSize();
+		   if(this.monoid != null)
+		   {
+			   node.updateAggregate(this.monoid);
+		   }
+		   return node;
+	   }
+	   
+	   private class BuildTask extends RecursiveTask<WAVLNode>
+	   {
+		   private static final long serialVersionUID = 1L;
+		   private final int[] keys;
+		   private final String[] values;
+		   private final int from;
+		   private final int to;
+		   
+		   BuildTask(int[] keys, String[] values, int from, int to)
+		   {
+			   this.keys = keys;
+			   this.values = values;
+			   this.from = from;
+			   this.to = to;
+		   }
+		   
+		   protected WAVLNode compute()
+		   {
+			   if(this.to - this.from < PARALLEL_BUILD_THRESHOLD)
+			   {
+				   return buildSorted(this.keys, this.values, this.from, this.to);
 			   }
-			   
-			   else
-			   { 
-				   WAVLNode rightLeft = right.getLeft();
-				   WAVLNode rightRight = right.getRight();
-				   if(right.getRank() - rightRight.getRank() == 1)//one rotate - case2 sim
+			   int middle = (this.from + this.to) >>> 1;
+			   BuildTask leftTask = new BuildTask(this.keys, this.values, this.from, middle);
+			   leftTask.fork();
+			   WAVLNode right = new BuildTask(this.keys, this.values, middle + 1, this.to).compute();
+			   WAVLNode left = leftTask.join();
+			   return joinBuilt(this.keys[middle], this.values[middle], left, right);
+		   }
+	   }
+	   
+	   // writes the keys and/or infos of the subtree of node, those arrays that are not null, from offset on
+	   private class ExportTask extends RecursiveAction
+	   {
+		   private static final long serialVersionUID = 1L;
+		   private final WAVLNode node;
+		   private final int offset;
+		   private final int[] keys;
+		   private final String[] values;
+		   
+		   ExportTask(WAVLNode node, int offset, int[] keys, String[] values)
+		   {
+			   this.node = node;
+			   this.offset = offset;
+			   this.keys = keys;
+			   this.values = values;
+		   }
+		   
+		   protected void compute()
+		   {
+			   if(this.node.getSubTreeSize() < PARALLEL_EXPORT_THRESHOLD)
+			   {
+				   if(this.keys != null)
 				   {
-					   if(parent != null)
-					   {
-						   right.setParent(parent);
-						   if(parent.getKey() < this.getKey())
-						   {
-							   parent.setRight(right);
-						   }
-						   else 
-						   {
-							   parent.setLeft(right);
-						   }
-					   }
-					   else
-					   {
-						   right.setParent(null);
-					   }   
-					   this.setParent(right);
-					   right.setLeft(this);
-					   this.setRank(thisRank - 1);
-					   this.setRight(rightLeft);
-					   rightLeft.setParent(this);
-					   
-					   //System.out.println("Changed " +this.getKey()+ " To " + (this.getSubTreeSize() - right.getSubTreeSize() + rightLeft.getSubTreeSize()));
-					   this.setSubTreeSize(this.getSubTreeSize() - right.getSubTreeSize() + rightLeft.getSubTreeSize()); //z
-					   //System.out.println("Changed " +right.getKey()+ " To " + (right.getSubTreeSize() - rightLeft.getSubTreeSize() + this.getSubTreeSize()));
-					   right.setSubTreeSize(right.getSubTreeSize() - rightLeft.getSubTreeSize() + this.getSubTreeSize()); //y
-					   
-					   return 1;
+					   this.node.keysToArray(this.keys, this.offset);
 				   }
-				   
-				   else// double rotation - case3 sim
+				   if(this.values != null)
 				   {
-					   WAVLNode rightLeftLeft = rightLeft.getLeft();
-					   WAVLNode rightLeftRight = rightLeft.getRight();
-					   if(parent != null)
-					   {
-						   rightLeft.setParent(parent);
-						   if(parent.getKey() < this.getKey())
-						   {
-							   parent.setRight(rightLeft);
-						   }
-						   else 
-						   {
-							   parent.setLeft(rightLeft);
-						   }
-					   }
-					   else
-					   {
-						   rightLeft.setParent(null);
-					   }
-					   this.setParent(rightLeft);
-					   rightLeft.setLeft(this);
-					   this.setRight(rightLeftLeft);
-					   rightLeftLeft.setParent(this);
-					   rightLeft.setRight(right);
-					   right.setParent(rightLeft);
-					   right.setLeft(rightLeftRight);
-					   rightLeftRight.setParent(right);
-					   right.setRank(right.getRank() - 1);
-					   this.setRank(thisRank - 1);
-					   rightLeft.setRank(rightLeft.getRank() + 1);
-					   
-					   //System.out.println("Changed " +this.getKey()+ " To " + (this.getSubTreeSize() - right.getSubTreeSize() + rightLeftLeft.getSubTreeSize()));
-					   this.setSubTreeSize(this.getSubTreeSize() - right.getSubTreeSize() + rightLeftLeft.getSubTreeSize()); //z
-					   //System.out.println("Changed " +left.getKey()+ " To " + (right.getSubTreeSize() - rightLeft.getSubTreeSize() + rightLeftRight.getSubTreeSize()));
-					   right.setSubTreeSize(right.getSubTreeSize() - rightLeft.getSubTreeSize() + rightLeftRight.getSubTreeSize()); //y
-					   //System.out.println("Changed " +rightLeft.getKey()+ " To " + (right.getSubTreeSize() + this.getSubTreeSize() + 1));
-					   rightLeft.setSubTreeSize(right.getSubTreeSize() + this.getSubTreeSize() + 1); //a
-					   
-					   return 2;
+					   this.node.infoToArray(this.values, this.offset);
 				   }
-				   
+				   return;
 			   }
-			   
+			   // a subtree this large has two inner sons
+			   int index = this.offset + this.node.getLeft().getSubTreeSize();
+			   ExportTask leftTask = new ExportTask(this.node.getLeft(), this.offset, this.keys, this.values);
+			   leftTask.fork();
+			   if(this.keys != null)
+			   {
+				   this.keys[index] = this.node.getKey();
+			   }
+			   if(this.values != null)
+			   {
+				   this.values[index] = this.node.getValue();
+			   }
+			   new ExportTask(this.node.getRight(), index + 1, this.keys, this.values).compute();
+			   leftTask.join();
 		   }
-		   
 	   }
-	}
 
-	public static void main(String[] args)
-	{
-		WAVLTree_itayshalev_eyalpintzov forest = new WAVLTree_itayshalev_eyalpintzov();
+	   /**
+	    * public void loadRanked(int[] keys, String[] values, byte[] ranks)
+	    *
+	    * Replaces the content of the tree by the items (keys[j], values[j]), node j getting rank ranks[j].
+	    * keys must be strictly increasing. Since a parent outranks its sons, the ranks in key order
+	    * determine the shape, which is rebuilt in O(n) with a stack of the nodes on the right spine.
+	    * Throws IllegalArgumentException if the ranks do not describe a WAVL tree.
+	    */
+	   public void loadRanked(int[] keys, String[] values, byte[] ranks)
+	   {
+		   if(keys.length != values.length || keys.length != ranks.length)
+		   {
+			   throw new IllegalArgumentException("got " + keys.length + " keys, " + values.length + " values and " + ranks.length + " ranks");
+		   }
+		   // ranks are below 128, so is the number of nodes on the right spine
+		   WAVLNode[] spine = new WAVLNode[Byte.MAX_VALUE + 1];
+		   int spineSize = 0;
+		   for(int j = 0; j < keys.length; j++)
+		   {
+			   if(j > 0 && keys[j - 1] >= keys[j])
+			   {
+				   throw new IllegalArgumentException("keys are not strictly increasing at index " + j);
+			   }
+			   WAVLNode node = new WAVLNode(keys[j], values[j], this.getExternalNode());
+			   node.setRank(ranks[j]);
+			   WAVLNode left = this.getExternalNode();
+			   while(spineSize > 0 && spine[spineSize - 1].getRank() < ranks[j])
+			   {
+				   left = spine[--spineSize];
+				   this.checkRanked(left);
+			   }
+			   if(spineSize > 0 && spine[spineSize - 1].getRank() == ranks[j])
+			   {
+				   throw new IllegalArgumentException("rank " + ranks[j] + " repeats at index " + j + " with no larger rank between");
+			   }
+			   node.setLeft(left);
+			   if(left.isInnerNode())
+			   {
+				   left.setParent(node);
+			   }
+			   if(spineSize > 0)
+			   {
+				   spine[spineSize - 1].setRight(node);
+				   node.setParent(spine[spineSize - 1]);
+			   }
+			   spine[spineSize++] = node;
+		   }
+		   for(int j = spineSize - 1; j >= 0; j--)
+		   {
+			   this.checkRanked(spine[j]);
+		   }
+		   this.setRootNode(spineSize == 0 ? null : spine[0]);
+	   }
+	   
+	   // node's subtree is complete - sets its size and checks its rank differences
+	   private void checkRanked(WAVLNode node)
+	   {
+		   node.updateSubTreeSize();
+		   if(this.monoid != null)
+		   {
+			   node.updateAggregate(this.monoid);
+		   }
+		   int leftDiff = node.getRank() - node.getLeft().getRank();
+		   int rightDiff = node.getRank() - node.getRight().getRank();
+		   if(leftDiff < 1 || leftDiff > 2 || rightDiff < 1 || rightDiff > 2 || (leftDiff == 2 && rightDiff == 2 && !node.getLeft().isInnerNode() && !node.getRight().isInnerNode()))
+		   {
+			   throw new IllegalArgumentException("node " + node.getKey() + " of rank " + node.getRank() + " breaks the rank rule");
+		   }
+	   }
+	   
+	   /**
+	    * public void writeTo(WritableByteChannel channel, boolean withShape) throws IOException
+	    *
+	    * Writes the tree to channel in the binary format of WAVLTreeFormat, with the ranks
+	    * of the nodes if withShape is set. Read it back with readTree.
+	    */
+	   public void writeTo(WritableByteChannel channel, boolean withShape) throws IOException
+	   {
+		   new WAVLTreeFormat().write(this, channel, withShape);
+	   }
+
+	   /**
+	    * public void join(int k, String i, WAVLTree t)
+	    *
+	    * Joins this tree, a new item with key k and info i, and the tree t into this tree.
+	    * Either all keys of t are smaller than k and all keys of this tree larger than k, or the other way around.
+	    * Works in O(|rank difference of the two roots| + 1); t is left empty.
+	    */
+	   public void join(int k, String i, WAVLTree t)
+	   {
+		   WAVLNode node = new WAVLNode(k, i, this.getExternalNode());
+		   boolean thisIsSmaller = (t.root == null || t.min.getKey() > k) && (this.root == null || this.max.getKey() < k);
+		   boolean thisIsLarger = (t.root == null || t.max.getKey() < k) && (this.root == null || this.min.getKey() > k);
+		   if(!thisIsSmaller && !thisIsLarger)
+		   {
+			   throw new IllegalArgumentException("the keys of the two trees must lie on different sides of " + k);
+		   }
+		   if(this.monoid != null)
+		   {
+			   this.monoid.lift(k, i);
+		   }
+		   this.adoptAggregate(t);
+		   WAVLNode left = thisIsSmaller ? this.rootOrExternal() : t.rootOrExternal();
+		   WAVLNode right = thisIsSmaller ? t.rootOrExternal() : this.rootOrExternal();
+		   this.setRootNode(this.joinNodes(left, node, right, new int[1], this.metrics));
+		   t.setRootNode(null);
+	   }
+	   
+	   /**
+	    * public WAVLTree[] split(int k)
+	    *
+	    * Splits this tree into two trees, the first with the keys smaller than k
+	    * and the second with the keys larger than k. An item with key k is dropped.
+	    * Works in O(log n); this tree is left empty.
+	    */
+	   public WAVLTree[] split(int k)
+	   {
+		   WAVLNode[] parts = this.splitNodes(this.rootOrExternal(), k, new int[1], this.metrics);
+		   WAVLTree smaller = new WAVLTree();
+		   WAVLTree larger = new WAVLTree();
+		   smaller.monoid = this.monoid;
+		   larger.monoid = this.monoid;
+		   smaller.setRootNode(parts[0]);
+		   larger.setRootNode(parts[2]);
+		   this.setRootNode(null);
+		   return new WAVLTree[] {smaller, larger};
+	   }
+	   
+	   /**
+	    * public void union(WAVLTree t)
+	    *
+	    * Adds all items of t to this tree; for keys in both trees this tree's info is kept.
+	    * Works in O(m log(n/m + 1)) for trees of sizes m <= n, subproblems of at least
+	    * PARALLEL_SET_THRESHOLD nodes run in the common fork-join pool. t is left empty.
+	    */
+	   public void union(WAVLTree t)
+	   {
+		   this.setOperation(UNION, t);
+	   }
+	   
+	   /**
+	    * public void intersection(WAVLTree t)
+	    *
+	    * Keeps in this tree only the keys that are also in t, with this tree's info.
+	    * Same bounds as union; t is left empty.
+	    */
+	   public void intersection(WAVLTree t)
+	   {
+		   this.setOperation(INTERSECTION, t);
+	   }
+	   
+	   /**
+	    * public void difference(WAVLTree t)
+	    *
+	    * Removes from this tree all keys that are in t.
+	    * Same bounds as union; t is left empty.
+	    */
+	   public void difference(WAVLTree t)
+	   {
+		   this.setOperation(DIFFERENCE, t);
+	   }
+	   
+	   /**
+	    * public int insertAll(int[] keys, String[] values)
+	    *
+	    * Inserts the items (keys[j], values[j]) like a sequence of inserts would:
+	    * keys already in the tree, and repeated keys after their first occurrence, are skipped.
+	    * The batch is sorted, built into a tree in O(m) and merged with one union,
+	    * so the tree is traversed once and every path is fixed up once; from PARALLEL_BUILD_THRESHOLD
+	    * keys on the sort and build, and from PARALLEL_SET_THRESHOLD nodes the merge, run in parallel.
+	    * Batches of fewer than SMALL_BATCH_THRESHOLD keys are inserted one by one instead.
+	    * Returns the number of rebalancing operations, which are also counted into the metrics;
+	    * a merged batch is not recorded in the insert latencies.
+	    */
+	   public int insertAll(int[] keys, String[] values)
+	   {
+		   if(keys.length != values.length)
+		   {
+			   throw new IllegalArgumentException("got " + keys.length + " keys but " + values.length + " values");
+		   }
+		   if(keys.length < SMALL_BATCH_THRESHOLD)
+		   {
+			   int numRebalance = 0;
+			   for(int j = 0; j < keys.length; j++)
+			   {
+				   numRebalance += Math.max(this.insert(keys[j], values[j]), 0);
+			   }
+			   return numRebalance;
+		   }
+		   boolean parallel = keys.length >= PARALLEL_BUILD_THRESHOLD;
+		   // sort (key, index) pairs packed into longs, so the first occurrence of a key comes first
+		   long[] order = new long[keys.length];
+		   for(int j = 0; j < keys.length; j++)
+		   {
+			   order[j] = ((long) keys[j] << 32) | j;
+		   }
+		   if(parallel)
+		   {
+			   Arrays.parallelSort(order);
+		   }
+		   else
+		   {
+			   Arrays.sort(order);
+		   }
+		   int count = 0;
+		   int[] sortedKeys = new int[keys.length];
+		   String[] sortedValues = new String[keys.length];
+		   for(int j = 0; j < order.length; j++)
+		   {
+			   int key = (int) (order[j] >> 32);
+			   if(count == 0 || sortedKeys[count - 1] != key)
+			   {
+				   sortedKeys[count] = key;
+				   sortedValues[count] = values[(int) order[j]];
+				   count++;
+			   }
+		   }
+		   WAVLTree batch = new WAVLTree();
+		   batch.loadSorted(Arrays.copyOf(sortedKeys, count), Arrays.copyOf(sortedValues, count), parallel);
+		   return this.setOperation(UNION, batch);
+	   }
+	   
+	   /**
+	    * public int deleteAll(int[] keys)
+	    *
+	    * Deletes all items whose keys are in keys, skipping keys not in the tree.
+	    * Like insertAll, the batch is sorted and removed with one difference,
+	    * or deleted one by one if it has fewer than SMALL_BATCH_THRESHOLD keys.
+	    * Returns the number of rebalancing operations, which are also counted into the metrics.
+	    */
+	   public int deleteAll(int[] keys)
+	   {
+		   if(keys.length < SMALL_BATCH_THRESHOLD)
+		   {
+			   int numRebalance = 0;
+			   for(int j = 0; j < keys.length; j++)
+			   {
+				   numRebalance += Math.max(this.delete(keys[j]), 0);
+			   }
+			   return numRebalance;
+		   }
+		   boolean parallel = keys.length >= PARALLEL_BUILD_THRESHOLD;
+		   int[] sortedKeys = keys.clone();
+		   if(parallel)
+		   {
+			   Arrays.parallelSort(sortedKeys);
+		   }
+		   else
+		   {
+			   Arrays.sort(sortedKeys);
+		   }
+		   int count = 0;
+		   for(int j = 0; j < sortedKeys.length; j++)
+		   {
+			   if(count == 0 || sortedKeys[count - 1] != sortedKeys[j])
+			   {
+				   sortedKeys[count++] = sortedKeys[j];
+			   }
+		   }
+		   WAVLTree batch = new WAVLTree();
+		   batch.loadSorted(Arrays.copyOf(sortedKeys, count), new String[count], parallel);
+		   return this.setOperation(DIFFERENCE, batch);
+	   }
+	   
+	   // runs a SetOperationTask on the roots of this tree and t, empties t and returns the number of rebalancing operations
+	   private int setOperation(int operation, WAVLTree t)
+	   {
+		   this.adoptAggregate(t);
+		   SetOperationTask task = new SetOperationTask(operation, this.rootOrExternal(), t.rootOrExternal(), this.metrics);
+		   if(this.size() + t.size() < PARALLEL_SET_THRESHOLD)
+		   {// it will not fork, so run it here instead of handing it to the pool
+			   this.setRootNode(task.invoke());
+		   }
+		   else
+		   {
+			   this.setRootNode(ForkJoinPool.commonPool().invoke(task));
+		   }
+		   t.setRootNode(null);
+		   return task.numRebalance[0];
+	   }
+	   
+	   private WAVLNode rootOrExternal()
+	   {
+		   return (this.root == null) ? this.getExternalNode() : this.root;
+	   }
+	   
+	   // makes node (detached, or an external node for an empty tree) the root and finds min and max again
+	   private void setRootNode(WAVLNode node)
+	   {
+		   this.finger = null;
+		   if(node == null || !node.isInnerNode())
+		   {
+			   this.setRoot(null);
+			   this.min = null;
+			   this.max = null;
+			   return;
+		   }
+		   node.setParent(null);
+		   this.setRoot(node);
+		   this.min = node;
+		   while(this.min.getLeft().isInnerNode())
+		   {
+			   this.min = this.min.getLeft();
+		   }
+		   this.max = node;
+		   while(this.max.getRight().isInnerNode())
+		   {
+			   this.max = this.max.getRight();
+		   }
+	   }
+	   
+	   // gives the nodes of t this tree's aggregates, so they can be joined into this tree
+	   private void adoptAggregate(WAVLTree t)
+	   {
+		   if(this.monoid != null && t.monoid != this.monoid)
+		   {
+			   t.setAggregate(this.monoid);
+		   }
+	   }
+	   
+	   /**
+	    * private void refreshAggregates(WAVLNode node)
+	    *
+	    * Recomputes the aggregates of node, its ancestors and their sons, bottom up.
+	    * After an insertion, deletion or join at node these are the only subtrees that changed:
+	    * every node a rotation moved off the path ends up as a son of a node on it.
+	    */
+	   private void refreshAggregates(WAVLNode node)
+	   {
+		   for(WAVLNode currentNode = node; currentNode != null; currentNode = currentNode.getParent())
+		   {
+			   if(currentNode.getLeft().isInnerNode())
+			   {
+				   currentNode.getLeft().updateAggregate(this.monoid);
+			   }
+			   if(currentNode.getRight().isInnerNode())
+			   {
+				   currentNode.getRight().updateAggregate(this.monoid);
+			   }
+			   currentNode.updateAggregate(this.monoid);
+		   }
+	   }
+	   
+	   private void detach(WAVLNode node)
+	   {
+		   if(node.isInnerNode())
+		   {
+			   node.setParent(null);
+		   }
+	   }
+	   
+	   // hangs left and right (detached subtrees or external nodes) under x with rank r
+	   private WAVLNode makeNode(WAVLNode left, WAVLNode x, WAVLNode right, int rank)
+	   {
+		   x.setLeft(left);
+		   x.setRight(right);
+		   if(left.isInnerNode())
+		   {
+			   left.setParent(x);
+		   }
+		   if(right.isInnerNode())
+		   {
+			   right.setParent(x);
+		   }
+		   x.setRank(rank);
+		   x.updateSubTreeSize();
+		   return x;
+	   }
+	   
+	   /**
+	    * private WAVLNode joinNodes(WAVLNode left, WAVLNode x, WAVLNode right, int[] numRebalance, WAVLMetrics metrics)
+	    *
+	    * Joins the detached subtrees left < x < right and returns the new (detached) root.
+	    * If the ranks differ by more than one, x is hung on the spine of the higher tree next to
+	    * the first node c of rank at most rank(lower) + 1, which has rank(lower) or rank(lower) + 1.
+	    * x then gets rank rank(c) + 1, so it is a 0-son at worst, which rebalanceInsert repairs.
+	    * The number of rebalancing operations is added to numRebalance[0], and counted into metrics unless it is null.
+	    */
+	   private WAVLNode joinNodes(WAVLNode left, WAVLNode x, WAVLNode right, int[] numRebalance, WAVLMetrics metrics)
+	   {
+		   x.setParent(null);
+		   int leftRank = left.getRank();
+		   int rightRank = right.getRank();
+		   if(Math.abs(leftRank - rightRank) <= 1)
+		   {
+			   this.makeNode(left, x, right, Math.max(leftRank, rightRank) + 1);
+			   if(this.monoid != null)
+			   {
+				   x.updateAggregate(this.monoid);
+			   }
+			   return x;
+		   }
+		   
+		   WAVLNode parent = null;
+		   WAVLNode sizeDelta;
+		   if(leftRank > rightRank)
+		   {
+			   WAVLNode currentNode = left;
+			   while(currentNode.getRank() > rightRank + 1)
+			   {
+				   parent = currentNode;
+				   currentNode = currentNode.getRight();
+			   }
+			   this.makeNode(currentNode, x, right, currentNode.getRank() + 1);
+			   parent.setRight(x);
+			   sizeDelta = right;
+		   }
+		   else
+		   {
+			   WAVLNode currentNode = right;
+			   while(currentNode.getRank() > leftRank + 1)
+			   {
+				   parent = currentNode;
+				   currentNode = currentNode.getLeft();
+			   }
+			   this.makeNode(left, x, currentNode, currentNode.getRank() + 1);
+			   parent.setLeft(x);
+			   sizeDelta = left;
+		   }
+		   x.setParent(parent);
+		   for(WAVLNode currentNode = parent; currentNode != null; currentNode = currentNode.getParent())
+		   {
+			   currentNode.setSubTreeSize(currentNode.getSubTreeSize() + sizeDelta.getSubTreeSize() + 1);
+		   }
+		   if(parent.getRank() == x.getRank())
+		   {
+			   numRebalance[0] += parent.rebalanceInsert(metrics);
+		   }
+		   if(this.monoid != null)
+		   {
+			   this.refreshAggregates(x);
+		   }
+		   WAVLNode newRoot = x;
+		   while(newRoot.getParent() != null)
+		   {
+			   newRoot = newRoot.getParent();
+		   }
+		   return newRoot;
+	   }
+	   
+	   // returns {keys < k, the node with key k or null, keys > k} as detached subtrees
+	   private WAVLNode[] splitNodes(WAVLNode node, int k, int[] numRebalance, WAVLMetrics metrics)
+	   {
+		   if(!node.isInnerNode())
+		   {
+			   return new WAVLNode[] {node, null, node};
+		   }
+		   WAVLNode left = node.getLeft();
+		   WAVLNode right = node.getRight();
+		   this.detach(left);
+		   this.detach(right);
+		   if(k == node.getKey())
+		   {
+			   node.setParent(null);
+			   node.setLeft(this.getExternalNode());
+			   node.setRight(this.getExternalNode());
+			   node.setRank(0);
+			   node.setSubTreeSize(1);
+			   return new WAVLNode[] {left, node, right};
+		   }
+		   if(k < node.getKey())
+		   {
+			   WAVLNode[] parts = this.splitNodes(left, k, numRebalance, metrics);
+			   parts[2] = this.joinNodes(parts[2], node, right, numRebalance, metrics);
+			   return parts;
+		   }
+		   WAVLNode[] parts = this.splitNodes(right, k, numRebalance, metrics);
+		   parts[0] = this.joinNodes(left, node, parts[0], numRebalance, metrics);
+		   return parts;
+	   }
+	   
+	   // returns {the subtree without its maximal node, the maximal node}
+	   private WAVLNode[] splitLast(WAVLNode node, int[] numRebalance, WAVLMetrics metrics)
+	   {
+		   WAVLNode left = node.getLeft();
+		   WAVLNode right = node.getRight();
+		   this.detach(left);
+		   this.detach(right);
+		   if(!right.isInnerNode())
+		   {
+			   return new WAVLNode[] {left, node};
+		   }
+		   WAVLNode[] parts = this.splitLast(right, numRebalance, metrics);
+		   parts[0] = this.joinNodes(left, node, parts[0], numRebalance, metrics);
+		   return parts;
+	   }
+	   
+	   // joins the detached subtrees left < right
+	   private WAVLNode join2(WAVLNode left, WAVLNode right, int[] numRebalance, WAVLMetrics metrics)
+	   {
+		   if(!left.isInnerNode())
+		   {
+			   return right;
+		   }
+		   if(!right.isInnerNode())
+		   {
+			   return left;
+		   }
+		   WAVLNode[] parts = this.splitLast(left, numRebalance, metrics);
+		   return this.joinNodes(parts[0], parts[1], right, numRebalance, metrics);
+	   }
+	   
+	   /**
+	    * Union, intersection or difference of two detached subtrees (Blelloch, Ferizovic & Sun '16):
+	    * split one tree by the other's root key, solve both sides - in parallel when they are large -
+	    * and join the results back by the root, or without it if the root key was dropped.
+	    */
+	   private class SetOperationTask extends RecursiveTask<WAVLNode>
+	   {
+		   private static final long serialVersionUID = 1L;
+		   private final int operation;
+		   private final WAVLNode first;
+		   private final WAVLNode second;
+		   // rebalancing operations done by this task and its subtasks
+		   private final int[] numRebalance = new int[1];
+		   // where this task counts its rebalancing steps, null if the tree keeps no metrics
+		   private final WAVLMetrics metrics;
+		   
+		   SetOperationTask(int operation, WAVLNode first, WAVLNode second, WAVLMetrics metrics)
+		   {
+			   this.operation = operation;
+			   this.first = first;
+			   this.second = second;
+			   this.metrics = metrics;
+		   }
+		   
+		   protected WAVLNode compute()
+		   {
+			   WAVLNode first = this.first;
+			   WAVLNode second = this.second;
+			   if(!first.isInnerNode() || !second.isInnerNode())
+			   {
+				   if(this.operation == UNION)
+				   {
+					   return first.isInnerNode() ? first : second;
+				   }
+				   return (this.operation == INTERSECTION && first.isInnerNode()) ? second : first;
+			   }
+			   
+			   // the pivot is the root of first, except for difference where second's root is dropped
+			   WAVLNode pivot = (this.operation == DIFFERENCE) ? second : first;
+			   WAVLNode other = (this.operation == DIFFERENCE) ? first : second;
+			   boolean parallel = first.getSubTreeSize() + second.getSubTreeSize() >= PARALLEL_SET_THRESHOLD;
+			   WAVLNode pivotLeft = pivot.getLeft();
+			   WAVLNode pivotRight = pivot.getRight();
+			   detach(pivotLeft);
+			   detach(pivotRight);
+			   WAVLNode[] parts = splitNodes(other, pivot.getKey(), this.numRebalance, this.metrics);
+			   
+			   // a forked task counts into metrics of its own, added to these once it is joined
+			   WAVLMetrics leftMetrics = (parallel && this.metrics != null) ? new WAVLMetrics(WAVLTree.this) : this.metrics;
+			   SetOperationTask leftTask;
+			   SetOperationTask rightTask;
+			   if(this.operation == DIFFERENCE)
+			   {
+				   leftTask = new SetOperationTask(this.operation, parts[0], pivotLeft, leftMetrics);
+				   rightTask = new SetOperationTask(this.operation, parts[2], pivotRight, this.metrics);
+			   }
+			   else
+			   {
+				   leftTask = new SetOperationTask(this.operation, pivotLeft, parts[0], leftMetrics);
+				   rightTask = new SetOperationTask(this.operation, pivotRight, parts[2], this.metrics);
+			   }
+			   WAVLNode left;
+			   WAVLNode right;
+			   if(parallel)
+			   {
+				   leftTask.fork();
+				   right = rightTask.compute();
+				   left = leftTask.join();
+			   }
+			   else
+			   {
+				   left = leftTask.compute();
+				   right = rightTask.compute();
+			   }
+			   this.numRebalance[0] += leftTask.numRebalance[0] + rightTask.numRebalance[0];
+			   if(leftMetrics != this.metrics)
+			   {
+				   this.metrics.addCounts(leftMetrics);
+			   }
+			   
+			   if(this.operation == UNION || (this.operation == INTERSECTION && parts[1] != null))
+			   {
+				   return joinNodes(left, pivot, right, this.numRebalance, this.metrics);
+			   }
+			   return join2(left, right, this.numRebalance, this.metrics);
+		   }
+	   }
+
+	   /**
+	   * public class WAVLNode
+	   */
+	   public class WAVLNode{
+		   private int key;
+		   private String value;
+		   private int rank;
+		   private WAVLNode parent;
+		   private WAVLNode leftSon;
+		   private WAVLNode rightSon;
+		   private boolean isExternal;
+		   private int subTreeSize;
+		   // the aggregate of the subtree under the tree's monoid, null if the tree keeps none
+		   private Object aggregate;
+		   
+		   public WAVLNode(int key, String value ,WAVLNode externalNode)
+		   {
+			   this.key = key;
+			   this.value = value;
+			   this.rank = 0;
+			   this.leftSon = externalNode;
+			   this.rightSon = externalNode;
+			   this.isExternal = false;
+			   this.subTreeSize = 1;
+		   }
+		   
+		   public int getKey()
+		   {
+			   return this.key; 
+		   }
+		   
+		   public String getValue()
+		   {
+			   return this.value;
+		   }
+		   
+		   public WAVLNode getLeft()
+		   {
+			   return this.leftSon;
+		   }
+		   
+		   public WAVLNode getRight()
+		   {
+			   return this.rightSon;
+		   }
+		   
+		   public boolean getIsExternal()
+		   {
+			   return this.isExternal;
+		   }
+		   
+		   public WAVLNode getParent()
+		   {
+			   return this.parent;
+		   }
+		   
+		   public int getRank()
+		   {
+			   return this.rank;
+		   }
+		   
+		   public int getSubTreeSize()
+		   {
+			   return this.subTreeSize;
+		   }
+		   
+		   public void setValue(String value)
+		   {
+			   if(!this.isExternal)
+			   {
+				   this.value = value;
+			   }               
+		   }
+		   
+		   public void setRank(int rank)
+		   {
+			   if(!this.isExternal)
+			   {
+				   this.rank = rank;
+			   }
+		   }
+		   
+		   public void setParent(WAVLNode parent)
+		   {
+			   this.parent = parent;
+		   }
+		   
+		   public void setRight(WAVLNode rightSon)
+		   {
+			   if(!this.isExternal)
+			   {
+				   this.rightSon = rightSon;
+			   }
+		   }
+		   
+		   public void setLeft(WAVLNode leftSon)
+		   {
+			   if(!this.isExternal)
+			   {
+				   this.leftSon = leftSon;
+			   }
+		   }
+		   
+		   public void setSubTreeSize(int size)
+		   {
+			   if(!this.isExternal)
+			   {
+				   this.subTreeSize = size;
+			   }
+		   }
+		   
+		   public boolean isInnerNode()
+		   {
+			   return !isExternal;
+		   }
+		   
+		   /**
+		    * public WAVLNode successor()
+		    *
+		    * Returns the node with the next larger key, or null if this is the maximal node.
+		    */
+		   public WAVLNode successor()
+		   {
+			   WAVLNode currentNode;
+			   if(this.getRight().isInnerNode())
+			   {
+				   currentNode = this.getRight();
+				   while(currentNode.getLeft().isInnerNode())
+				   {
+					   currentNode = currentNode.getLeft();
+				   }
+				   return currentNode;
+			   }
+			   currentNode = this;
+			   while(currentNode.getParent() != null && currentNode.getParent().getRight() == currentNode)
+			   {
+				   currentNode = currentNode.getParent();
+			   }
+			   return currentNode.getParent();
+		   }
+		   
+		   /**
+		    * public WAVLNode predecessor()
+		    *
+		    * Returns the node with the next smaller key, or null if this is the minimal node.
+		    */
+		   public WAVLNode predecessor()
+		   {
+			   WAVLNode currentNode;
+			   if(this.getLeft().isInnerNode())
+			   {
+				   currentNode = this.getLeft();
+				   while(currentNode.getRight().isInnerNode())
+				   {
+					   currentNode = currentNode.getRight();
+				   }
+				   return currentNode;
+			   }
+			   currentNode = this;
+			   while(currentNode.getParent() != null && currentNode.getParent().getLeft() == currentNode)
+			   {
+				   currentNode = currentNode.getParent();
+			   }
+			   return currentNode.getParent();
+		   }
+		   
+		   public Object getAggregate()
+		   {
+			   return this.aggregate;
+		   }
+		   
+		   /**
+		    * public void updateAggregate(WAVLMonoid<Object> monoid)
+		    *
+		    * Sets the aggregate of this inner node from its item and its sons' aggregates.
+		    */
+		   public void updateAggregate(WAVLMonoid<Object> monoid)
+		   {
+			   Object aggregate = monoid.lift(this.key, this.value);
+			   if(this.getLeft().isInnerNode())
+			   {
+				   aggregate = monoid.combine(this.getLeft().aggregate, aggregate);
+			   }
+			   if(this.getRight().isInnerNode())
+			   {
+				   aggregate = monoid.combine(aggregate, this.getRight().aggregate);
+			   }
+			   this.aggregate = aggregate;
+		   }
+		   
+		   // updateAggregate for every node of this subtree, sons first
+		   public void updateAggregates(WAVLMonoid<Object> monoid)
+		   {
+			   if(this.getLeft().isInnerNode())
+			   {
+				   this.getLeft().updateAggregates(monoid);
+			   }
+			   if(this.getRight().isInnerNode())
+			   {
+				   this.getRight().updateAggregates(monoid);
+			   }
+			   this.updateAggregate(monoid);
+		   }
+		   
+		   public void updateSubTreeSize()
+		   {
+			   this.setSubTreeSize(this.getLeft().getSubTreeSize() + this.getRight().getSubTreeSize() + 1);
+		   }
+		   
+		   /**
+		    * public void replaceInParent(WAVLNode node)
+		    *
+		    * Hangs node in this node's place under this node's parent.
+		    * node may be the external node, whose parent is left untouched.
+		    */
+		   public void replaceInParent(WAVLNode node)
+		   {
+			   WAVLNode parent = this.getParent();
+			   if(node.isInnerNode())
+			   {
+				   node.setParent(parent);
+			   }
+			   if(parent != null)
+			   {
+				   if(parent.getLeft() == this)
+				   {
+					   parent.setLeft(node);
+				   }
+				   else
+				   {
+					   parent.setRight(node);
+				   }
+			   }
+		   }
+		   
+		   /**
+		    * public void rotateRight()
+		    *
+		    * Rotates this node's left son up into this node's place.
+		    * Ranks are left to the caller, subtree sizes are fixed.
+		    */
+		   public void rotateRight()
+		   {
+			   WAVLNode left = this.getLeft();
+			   WAVLNode leftRight = left.getRight();
+			   this.replaceInParent(left);
+			   left.setRight(this);
+			   this.setParent(left);
+			   this.setLeft(leftRight);
+			   if(leftRight.isInnerNode())
+			   {
+				   leftRight.setParent(this);
+			   }
+			   this.updateSubTreeSize();
+			   left.updateSubTreeSize();
+		   }
+		   
+		   /**
+		    * public void rotateLeft()
+		    *
+		    * Rotates this node's right son up into this node's place.
+		    * Ranks are left to the caller, subtree sizes are fixed.
+		    */
+		   public void rotateLeft()
+		   {
+			   WAVLNode right = this.getRight();
+			   WAVLNode rightLeft = right.getLeft();
+			   this.replaceInParent(right);
+			   right.setLeft(this);
+			   this.setParent(right);
+			   this.setRight(rightLeft);
+			   if(rightLeft.isInnerNode())
+			   {
+				   rightLeft.setParent(this);
+			   }
+			   this.updateSubTreeSize();
+			   right.updateSubTreeSize();
+		   }
+		   
+		   /**
+		    * public void swapWithSuccessor(WAVLNode successor)
+		    *
+		    * Exchanges the positions (and so ranks and subtree sizes) of this binary node
+		    * and its successor, keeping both node objects alive.
+		    * Afterwards this node has no left son.
+		    */
+		   public void swapWithSuccessor(WAVLNode successor)
+		   {
+			   WAVLNode left = this.getLeft();
+			   WAVLNode right = this.getRight();
+			   WAVLNode successorParent = successor.getParent();
+			   WAVLNode successorLeft = successor.getLeft();
+			   WAVLNode successorRight = successor.getRight();
+			   
+			   this.replaceInParent(successor);
+			   successor.setLeft(left);
+			   left.setParent(successor);
+			   if(successor == right)
+			   {
+				   successor.setRight(this);
+				   this.setParent(successor);
+			   }
+			   else
+			   {
+				   successor.setRight(right);
+				   right.setParent(successor);
+				   successorParent.setLeft(this);
+				   this.setParent(successorParent);
+			   }
+			   this.setLeft(successorLeft);
+			   this.setRight(successorRight);
+			   if(successorRight.isInnerNode())
+			   {
+				   successorRight.setParent(this);
+			   }
+			   
+			   int rank = this.getRank();
+			   this.setRank(successor.getRank());
+			   successor.setRank(rank);
+			   int size = this.getSubTreeSize();
+			   this.setSubTreeSize(successor.getSubTreeSize());
+			   successor.setSubTreeSize(size);
+		   }
+		   
+		   public int rebalanceDelete()
+		   {
+			   return this.rebalanceDelete(null);
+		   }
+		   
+		   /**
+		    * public int rebalanceDelete(WAVLMetrics metrics)
+		    *
+		    * Rebalances after a deletion under this node, also counting demotions and rotations into metrics unless it is null.
+		    */
+		   public int rebalanceDelete(WAVLMetrics metrics)
+		   {
+			   int thisRank = this.getRank();
+			   WAVLNode left = this.getLeft();
+			   WAVLNode right = this.getRight();
+			   WAVLNode parent = this.getParent();
+			   int leftDiffRank = thisRank - left.getRank();
+			   int rightDiffRank = thisRank - right.getRank();
+			   
+			   if(left.isExternal && right.isExternal && thisRank > 0)
+			   {//2,2 leaf - demote
+				   this.setRank(0);
+				   if(metrics != null)
+				   {
+					   metrics.demotions++;
+				   }
+				   if(parent == null)
+				   {
+					   return 1;
+				   }
+				   return 1 + parent.rebalanceDelete(metrics);
+			   }
+			   if(leftDiffRank <= 2 && rightDiffRank <= 2)
+			   {
+				   return 0;
+			   }
+			   if(leftDiffRank == 2 || rightDiffRank == 2)
+			   {//3,2 - demote
+				   this.setRank(thisRank - 1);
+				   if(metrics != null)
+				   {
+					   metrics.demotions++;
+				   }
+				   if(parent == null)
+				   {
+					   return 1;
+				   }
+				   return 1 + parent.rebalanceDelete(metrics);
+			   }
+			   
+			   // 3,1 - look at the sibling of the 3-son
+			   boolean siblingIsRight = (leftDiffRank == 3);
+			   WAVLNode sibling = siblingIsRight ? right : left;
+			   WAVLNode outer = siblingIsRight ? sibling.getRight() : sibling.getLeft();
+			   WAVLNode inner = siblingIsRight ? sibling.getLeft() : sibling.getRight();
+			   int siblingRank = sibling.getRank();
+			   
+			   if(siblingRank - outer.getRank() == 2 && siblingRank - inner.getRank() == 2)
+			   {//double demote
+				   this.setRank(thisRank - 1);
+				   sibling.setRank(siblingRank - 1);
+				   if(metrics != null)
+				   {
+					   metrics.demotions += 2;
+				   }
+				   if(parent == null)
+				   {
+					   return 2;
+				   }
+				   return 2 + parent.rebalanceDelete(metrics);
+			   }
+			   if(siblingRank - outer.getRank() == 1)
+			   {//one rotate
+				   if(siblingIsRight)
+				   {
+					   this.rotateLeft();
+				   }
+				   else
+				   {
+					   this.rotateRight();
+				   }
+				   sibling.setRank(siblingRank + 1);
+				   this.setRank(thisRank - 1);
+				   if(this.getLeft().isExternal && this.getRight().isExternal)
+				   {
+					   this.setRank(0);
+				   }
+				   if(metrics != null)
+				   {
+					   metrics.singleRotations++;
+				   }
+				   return 1;
+			   }
+			   //double rotate
+			   if(siblingIsRight)
+			   {
+				   sibling.rotateRight();
+				   this.rotateLeft();
+			   }
+			   else
+			   {
+				   sibling.rotateLeft();
+				   this.rotateRight();
+			   }
+			   inner.setRank(inner.getRank() + 2);
+			   sibling.setRank(siblingRank - 1);
+			   this.setRank(thisRank - 2);
+			   if(metrics != null)
+			   {
+				   metrics.doubleRotations++;
+			   }
+			   return 2;
+		   }
+		   
+		   public String toString()
+		   {
+			   String st = "";
+			   st += "key = " + key + ", value = " + value + ", rank " + rank +", parentKey = " + "parent.getKey()" + ", leftKey = " + "leftSon.getKey()" + ", rightKey = " + "rightSon.getKey()" + ", isExternal = " + isExternal + ", size = " + this.subTreeSize; 
+			   return st;
+		   }
+		   
+		   public int[] keysToArray(int[] arr, int currentIndex)
+		   {
+			   if(this.getLeft().isExternal && this.getRight().isExternal)
+			   {
+				   arr[currentIndex] = this.getKey();
+				   return arr;
+			   }
+			   if(!this.getLeft().isExternal)
+			   {
+				   this.getLeft().keysToArray(arr, currentIndex);
+			   }
+			   currentIndex += this.getLeft().getSubTreeSize();
+			   arr[currentIndex] = this.getKey();
+			   currentIndex++;
+			   if(!this.getRight().isExternal)
+			   {
+				   this.getRight().keysToArray(arr, currentIndex);
+			   }
+			   return arr;
+		   }
+		   
+		   /**
+		    * public int height()
+		    *
+		    * Returns the number of edges on the longest path from this inner node down to an inner node.
+		    */
+		   public int height()
+		   {
+			   int height = 0;
+			   if(!this.getLeft().isExternal)
+			   {
+				   height = this.getLeft().height() + 1;
+			   }
+			   if(!this.getRight().isExternal)
+			   {
+				   height = Math.max(height, this.getRight().height() + 1);
+			   }
+			   return height;
+		   }
+		   
+		   /**
+		    * public void countRankDifferences(long[] counts)
+		    *
+		    * Adds 1 to counts[d] for every edge in this subtree, external children included,
+		    * whose rank difference is d.
+		    */
+		   public void countRankDifferences(long[] counts)
+		   {
+			   counts[this.getRank() - this.getLeft().getRank()]++;
+			   counts[this.getRank() - this.getRight().getRank()]++;
+			   if(!this.getLeft().isExternal)
+			   {
+				   this.getLeft().countRankDifferences(counts);
+			   }
+			   if(!this.getRight().isExternal)
+			   {
+				   this.getRight().countRankDifferences(counts);
+			   }
+		   }
+		   
+		   public String[] infoToArray(String[] arr, int[] currentIndex)//changed
+		   {
+			   this.infoToArray(arr, currentIndex[0]);
+			   currentIndex[0] += this.getSubTreeSize();
+			   return arr;
+		   }
+		   
+		   public String[] infoToArray(String[] arr, int currentIndex)
+		   {
+			   if(this.getLeft().isExternal && this.getRight().isExternal)
+			   {
+				   arr[currentIndex] = this.getValue();
+				   return arr;
+			   }
+			   if(!this.getLeft().isExternal)
+			   {
+				   this.getLeft().infoToArray(arr, currentIndex);
+			   }
+			   currentIndex += this.getLeft().getSubTreeSize();
+			   arr[currentIndex] = this.getValue();
+			   currentIndex++;
+			   if(!this.getRight().isExternal)
+			   {
+				   this.getRight().infoToArray(arr, currentIndex);
+			   }
+			   return arr;
+		   }
+		   
+		   public WAVLNode placeToInsert(int key)//tiud
+		   {
+			   if(key == this.getKey())
+			   {
+				   return null;
+			   }
+			   if(key < this.getKey())
+			   {
+				   if(this.getLeft().isExternal)
+				   {
+					   return this;
+				   }
+				   return this.getLeft().placeToInsert(key);
+			   }
+			   else
+			   {
+				   if(this.getRight().isExternal)
+				   {
+					   return this;
+				   }
+				   return this.getRight().placeToInsert(key);   
+			   }
+		   }
+		   
+		   public int rebalanceInsert()
+		   {
+			   return this.rebalanceInsert(null);
+		   }
+		   
+		   /**
+		    * public int rebalanceInsert(WAVLMetrics metrics)
+		    *
+		    * Same as rebalanceInsert(), also counting promotions and rotations into metrics unless it is null.
+		    */
+		   public int rebalanceInsert(WAVLMetrics metrics)
+		   {
+			   int numRebalance = 0;
+			   WAVLNode node = this;
+			   while(node != null)
+			   {
+				   int nodeRank = node.getRank();
+				   WAVLNode left = node.getLeft();
+				   WAVLNode right = node.getRight();	
+				   WAVLNode parent = node.getParent();
+				   int leftDiffRank = nodeRank - left.getRank();
+				   int rightDiffRank = nodeRank - right.getRank();
+			   
+				   if(((leftDiffRank <= 2) && (leftDiffRank > 0)) && ((rightDiffRank <= 2) && (rightDiffRank > 0)))
+				   {
+					   return numRebalance;
+				   }
+				   if((leftDiffRank == 0 && rightDiffRank==1) || (leftDiffRank == 1 && rightDiffRank==0))
+				   {//promote
+					   node.setRank(nodeRank + 1);
+					   numRebalance++;
+					   if(metrics != null)
+					   {
+						   metrics.promotions++;
+					   }
+					   node = parent;
+					   continue;
+				   }
+			   
+				   if(leftDiffRank == 0)
+				   { 
+					   WAVLNode leftLeft = left.getLeft();
+					   WAVLNode leftRight = left.getRight();
+					   if(left.getRank() - leftLeft.getRank() == 1)// one rotate - case2
+					   {
+						   if(parent != null)
+						   {
+							   left.setParent(parent);
+							   if(parent.getKey() < node.getKey())
+							   {
+								   parent.setRight(left);
+							   }
+							   else 
+							   {
+								   parent.setLeft(left);
+							   }
+						   }
+						   else 
+						   {
+							   left.setParent(null);
+						   }
+						   node.setParent(left);
+						   left.setRight(node);
+						   node.setRank(nodeRank - 1);
+						   node.setLeft(leftRight);
+						   leftRight.setParent(node);
+					   
+						   //System.out.println("Changed " +node.getKey()+ " To " + (node.getSubTreeSize() - left.getSubTreeSize() + leftRight.getSubTreeSize()));
+						   node.setSubTreeSize(node.getSubTreeSize() - left.getSubTreeSize() + leftRight.getSubTreeSize()); //z
+						   //System.out.println("Changed " +left.getKey()+ " To " + (left.getSubTreeSize() - leftRight.getSubTreeSize() + node.getSubTreeSize()));
+						   left.setSubTreeSize(left.getSubTreeSize() - leftRight.getSubTreeSize() + node.getSubTreeSize()); //x
+					   
+					   
+						   if(metrics != null)
+						   {
+							   metrics.singleRotations++;
+						   }
+						   return numRebalance + 1;
+					   }
+					   else//double rotate - case3
+					   {
+						   //System.out.println("here: " + leftLeft);
+						   WAVLNode leftRightLeft = leftRight.getLeft();
+						   WAVLNode leftRightRight = leftRight.getRight();
+						   if(parent != null)
+						   {
+							   leftRight.setParent(parent);
+							   if(parent.getKey() < node.getKey())
+							   {
+								   parent.setRight(leftRight);
+							   }
+							   else 
+							   {
+								   parent.setLeft(leftRight);
+							   }
+						   }
+						   else 
+						   {
+							   leftRight.setParent(null);
+						   }
+						   node.setParent(leftRight);
+						   leftRight.setRight(node);
+						   node.setLeft(leftRightRight);
+						   leftRightRight.setParent(node);
+						   leftRight.setLeft(left);
+						   left.setParent(leftRight);
+						   left.setRight(leftRightLeft);
+						   leftRightLeft.setParent(left);
+						   left.setRank(left.getRank() - 1);
+						   node.setRank(nodeRank - 1);
+						   leftRight.setRank(leftRight.getRank() + 1);
+					   
+						   //System.out.println("Changed " +node.getKey()+ " To " + (node.getSubTreeSize() - left.getSubTreeSize() + leftRightRight.getSubTreeSize()));
+						   node.setSubTreeSize(node.getSubTreeSize() - left.getSubTreeSize() + leftRightRight.getSubTreeSize()); //z
+						   //System.out.println("Changed " +left.getKey()+ " To " + (left.getSubTreeSize() - leftRight.getSubTreeSize() + leftRightLeft.getSubTreeSize()));
+						   left.setSubTreeSize(left.getSubTreeSize() - leftRight.getSubTreeSize() + leftRightLeft.getSubTreeSize()); //x
+						   //System.out.println("Changed " +leftRight.getKey()+ " To " + (left.getSubTreeSize() + node.getSubTreeSize() + 1));
+						   leftRight.setSubTreeSize(left.getSubTreeSize() + node.getSubTreeSize() + 1); //b
+					   					   
+						   if(metrics != null)
+						   {
+							   metrics.doubleRotations++;
+						   }
+						   return numRebalance + 2;
+					   }
+				   
+				   }
+			   
+				   else
+				   { 
+					   WAVLNode rightLeft = right.getLeft();
+					   WAVLNode rightRight = right.getRight();
+					   if(right.getRank() - rightRight.getRank() == 1)//one rotate - case2 sim
+					   {
+						   if(parent != null)
+						   {
+							   right.setParent(parent);
+							   if(parent.getKey() < node.getKey())
+							   {
+								   parent.setRight(right);
+							   }
+							   else 
+							   {
+								   parent.setLeft(right);
+							   }
+						   }
+						   else
+						   {
+							   right.setParent(null);
+						   }   
+						   node.setParent(right);
+						   right.setLeft(node);
+						   node.setRank(nodeRank - 1);
+						   node.setRight(rightLeft);
+						   rightLeft.setParent(node);
+					   
+						   //System.out.println("Changed " +node.getKey()+ " To " + (node.getSubTreeSize() - right.getSubTreeSize() + rightLeft.getSubTreeSize()));
+						   node.setSubTreeSize(node.getSubTreeSize() - right.getSubTreeSize() + rightLeft.getSubTreeSize()); //z
+						   //System.out.println("Changed " +right.getKey()+ " To " + (right.getSubTreeSize() - rightLeft.getSubTreeSize() + node.getSubTreeSize()));
+						   right.setSubTreeSize(right.getSubTreeSize() - rightLeft.getSubTreeSize() + node.getSubTreeSize()); //y
+					   
+						   if(metrics != null)
+						   {
+							   metrics.singleRotations++;
+						   }
+						   return numRebalance + 1;
+					   }
+				   
+					   else// double rotation - case3 sim
+					   {
+						   WAVLNode rightLeftLeft = rightLeft.getLeft();
+						   WAVLNode rightLeftRight = rightLeft.getRight();
+						   if(parent != null)
+						   {
+							   rightLeft.setParent(parent);
+							   if(parent.getKey() < node.getKey())
+							   {
+								   parent.setRight(rightLeft);
+							   }
+							   else 
+							   {
+								   parent.setLeft(rightLeft);
+							   }
+						   }
+						   else
+						   {
+							   rightLeft.setParent(null);
+						   }
+						   node.setParent(rightLeft);
+						   rightLeft.setLeft(node);
+						   node.setRight(rightLeftLeft);
+						   rightLeftLeft.setParent(node);
+						   rightLeft.setRight(right);
+						   right.setParent(rightLeft);
+						   right.setLeft(rightLeftRight);
+						   rightLeftRight.setParent(right);
+						   right.setRank(right.getRank() - 1);
+						   node.setRank(nodeRank - 1);
+						   rightLeft.setRank(rightLeft.getRank() + 1);
+					   
+						   //System.out.println("Changed " +node.getKey()+ " To " + (node.getSubTreeSize() - right.getSubTreeSize() + rightLeftLeft.getSubTreeSize()));
+						   node.setSubTreeSize(node.getSubTreeSize() - right.getSubTreeSize() + rightLeftLeft.getSubTreeSize()); //z
+						   //System.out.println("Changed " +left.getKey()+ " To " + (right.getSubTreeSize() - rightLeft.getSubTreeSize() + rightLeftRight.getSubTreeSize()));
+						   right.setSubTreeSize(right.getSubTreeSize() - rightLeft.getSubTreeSize() + rightLeftRight.getSubTreeSize()); //y
+						   //System.out.println("Changed " +rightLeft.getKey()+ " To " + (right.getSubTreeSize() + node.getSubTreeSize() + 1));
+						   rightLeft.setSubTreeSize(right.getSubTreeSize() + node.getSubTreeSize() + 1); //a
+					   
+						   if(metrics != null)
+						   {
+							   metrics.doubleRotations++;
+						   }
+						   return numRebalance + 2;
+					   }
+				   
+				   }
+			   
+			   }
+			   return numRebalance;
+		   }
+		   
+	   }
+	}
+
+	/**
+	 *
+	 * WAVLMetricsMBean
+	 *
+	 * The management interface of WAVLMetrics, see WAVLMetrics.registerMBean.
+	 *
+	 */
+	public interface WAVLMetricsMBean
+	{
+		long getPromotions();
+		long getDemotions();
+		long getSingleRotations();
+		long getDoubleRotations();
+		long getRebalances();
+		int getSize();
+		int getHeight();
+		long getRankDifferenceOnes();
+		long getRankDifferenceTwos();
+		long getSearchCount();
+		long getSearchP50Nanos();
+		long getSearchP99Nanos();
+		long getInsertCount();
+		long getInsertP50Nanos();
+		long getInsertP99Nanos();
+		long getDeleteCount();
+		long getDeleteP50Nanos();
+		long getDeleteP99Nanos();
+		void reset();
+	}
+
+	/**
+	 *
+	 * WAVLMetricsSink
+	 *
+	 * Receives the values of a WAVLMetrics one by one, see WAVLMetrics.publish.
+	 * Lets the metrics be forwarded to any monitoring system without the tree depending on it.
+	 *
+	 */
+	public interface WAVLMetricsSink
+	{
+		void report(String name, long value);
+	}
+
+	/**
+	 *
+	 * LatencyHistogram
+	 *
+	 * Counts durations in 64 power of two buckets, bucket i holding durations in [2^i, 2^(i+1)) nanoseconds
+	 * (bucket 0 also holds 0). Recording is a shift and an increment, percentiles are exact up to a factor of 2.
+	 *
+	 */
+	public class LatencyHistogram
+	{
+		private final long[] buckets = new long[64];
+		private long count;
+
+		public void record(long nanos)
+		{
+			this.buckets[63 - Long.numberOfLeadingZeros(nanos | 1)]++;
+			this.count++;
+		}
+
+		public long getCount()
+		{
+			return this.count;
+		}
+
+		/**
+		 * public long percentile(double q)
+		 *
+		 * Returns the upper end of the bucket holding the q'th quantile (0 < q <= 1) of the recorded durations,
+		 * or 0 if nothing was recorded.
+		 */
+		public long percentile(double q)
+		{
+			long target = (long) Math.ceil(q * this.count);
+			long seen = 0;
+			for(int i = 0; i < this.buckets.length; i++)
+			{
+				seen += this.buckets[i];
+				if(seen >= target && seen > 0)
+				{
+					return i == 63 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+				}
+			}
+			return 0;
+		}
+
+		public void reset()
+		{
+			Arrays.fill(this.buckets, 0);
+			this.count = 0;
+		}
+	}
+
+	/**
+	 *
+	 * WAVLMetrics
+	 *
+	 * Rebalance counts and operation latencies of one WAVLTree, see WAVLTree.enableMetrics().
+	 * The counts are updated by the operations themselves. The size, the height and the rank differences
+	 * are those of the last sample(), which walks the tree in O(n).
+	 * Like WAVLTree, not thread safe: sample it from the thread that updates the tree.
+	 *
+	 */
+	public class WAVLMetrics implements WAVLMetricsMBean
+	{
+		private final WAVLTree tree;
+		private long promotions;
+		private long demotions;
+		private long singleRotations;
+		private long doubleRotations;
+		private final LatencyHistogram searches = new LatencyHistogram();
+		private final LatencyHistogram inserts = new LatencyHistogram();
+		private final LatencyHistogram deletes = new LatencyHistogram();
+		private ObjectName objectName;
+		// the shape of the tree at the last sample, read by JMX threads
+		private volatile int sampledSize;
+		private volatile int sampledHeight;
+		private volatile long sampledRankDifferenceOnes;
+		private volatile long sampledRankDifferenceTwos;
+
+		public WAVLMetrics(WAVLTree tree)
+		{
+			this.tree = tree;
+		}
+
+		public long getPromotions()
+		{
+			return this.promotions;
+		}
+
+		/**
+		 * public long getDemotions()
+		 *
+		 * Returns the number of demotions, a double demote counting as 2.
+		 */
+		public long getDemotions()
+		{
+			return this.demotions;
+		}
+
+		public long getSingleRotations()
+		{
+			return this.singleRotations;
+		}
+
+		public long getDoubleRotations()
+		{
+			return this.doubleRotations;
+		}
+
+		/**
+		 * public long getRebalances()
+		 *
+		 * Returns the sum of the rebalance steps, counted like the return values of insert and delete.
+		 */
+		public long getRebalances()
+		{
+			return this.promotions + this.demotions + this.singleRotations + 2 * this.doubleRotations;
+		}
+
+		/**
+		 * public void sample()
+		 *
+		 * Records the size, the height and the rank differences of the tree, in O(n),
+		 * for the getters below and JMX. Call it from the thread that updates the tree.
+		 */
+		public void sample()
+		{
+			long[] rankDifferences = this.tree.rankDifferences();
+			this.sampledSize = this.tree.size();
+			this.sampledHeight = this.tree.height();
+			this.sampledRankDifferenceOnes = rankDifferences[1];
+			this.sampledRankDifferenceTwos = rankDifferences[2];
+		}
+
+		public int getSize()
+		{
+			return this.sampledSize;
+		}
+
+		public int getHeight()
+		{
+			return this.sampledHeight;
+		}
+
+		public long getRankDifferenceOnes()
+		{
+			return this.sampledRankDifferenceOnes;
+		}
+
+		public long getRankDifferenceTwos()
+		{
+			return this.sampledRankDifferenceTwos;
+		}
+
+		public LatencyHistogram getSearches()
+		{
+			return this.searches;
+		}
+
+		public LatencyHistogram getInserts()
+		{
+			return this.inserts;
+		}
+
+		public LatencyHistogram getDeletes()
+		{
+			return this.deletes;
+		}
+
+		public long getSearchCount()
+		{
+			return this.searches.getCount();
+		}
+
+		public long getSearchP50Nanos()
+		{
+			return this.searches.percentile(0.5);
+		}
+
+		public long getSearchP99Nanos()
+		{
+			return this.searches.percentile(0.99);
+		}
+
+		public long getInsertCount()
+		{
+			return this.inserts.getCount();
+		}
+
+		public long getInsertP50Nanos()
+		{
+			return this.inserts.percentile(0.5);
+		}
+
+		public long getInsertP99Nanos()
+		{
+			return this.inserts.percentile(0.99);
+		}
+
+		public long getDeleteCount()
+		{
+			return this.deletes.getCount();
+		}
+
+		public long getDeleteP50Nanos()
+		{
+			return this.deletes.percentile(0.5);
+		}
+
+		public long getDeleteP99Nanos()
+		{
+			return this.deletes.percentile(0.99);
+		}
+
+		// adds the rebalance counts of other, collected by a forked part of a set operation
+		private void addCounts(WAVLMetrics other)
+		{
+			this.promotions += other.promotions;
+			this.demotions += other.demotions;
+			this.singleRotations += other.singleRotations;
+			this.doubleRotations += other.doubleRotations;
+		}
+
+		/**
+		 * public void reset()
+		 *
+		 * Zeroes the counts and the latency histograms.
+		 */
+		public void reset()
+		{
+			this.promotions = 0;
+			this.demotions = 0;
+			this.singleRotations = 0;
+			this.doubleRotations = 0;
+			this.searches.reset();
+			this.inserts.reset();
+			this.deletes.reset();
+		}
+
+		/**
+		 * public void publish(WAVLMetricsSink sink)
+		 *
+		 * Samples the tree, see sample(), and reports every value to sink under a name like "wavl.promotions".
+		 */
+		public void publish(WAVLMetricsSink sink)
+		{
+			this.sample();
+			sink.report("wavl.promotions", this.promotions);
+			sink.report("wavl.demotions", this.demotions);
+			sink.report("wavl.rotations.single", this.singleRotations);
+			sink.report("wavl.rotations.double", this.doubleRotations);
+			sink.report("wavl.size", this.sampledSize);
+			sink.report("wavl.height", this.sampledHeight);
+			sink.report("wavl.rankdiff.1", this.sampledRankDifferenceOnes);
+			sink.report("wavl.rankdiff.2", this.sampledRankDifferenceTwos);
+			sink.report("wavl.search.count", this.searches.getCount());
+			sink.report("wavl.search.p50", this.searches.percentile(0.5));
+			sink.report("wavl.search.p99", this.searches.percentile(0.99));
+			sink.report("wavl.insert.count", this.inserts.getCount());
+			sink.report("wavl.insert.p50", this.inserts.percentile(0.5));
+			sink.report("wavl.insert.p99", this.inserts.percentile(0.99));
+			sink.report("wavl.delete.count", this.deletes.getCount());
+			sink.report("wavl.delete.p50", this.deletes.percentile(0.5));
+			sink.report("wavl.delete.p99", this.deletes.percentile(0.99));
+		}
+
+		/**
+		 * public void registerMBean(String name)
+		 *
+		 * Registers the metrics with the platform MBean server under the object name name,
+		 * for example "wavl:type=WAVLTree,name=index". JMX calls the getters from its own threads,
+		 * so they never walk the tree: the size, height and rank differences are those of the last
+		 * sample() or publish(), and the counts may lag behind the updating thread.
+		 * Throws IllegalArgumentException if name is malformed or already registered.
+		 */
+		public void registerMBean(String name)
+		{
+			try
+			{
+				ObjectName objectName = new ObjectName(name);
+				ManagementFactory.getPlatformMBeanServer().registerMBean(
+						new StandardMBean(this, WAVLMetricsMBean.class), objectName);
+				this.objectName = objectName;
+			}
+			catch(JMException e)
+			{
+				throw new IllegalArgumentException("cannot register " + name, e);
+			}
+		}
+
+		/**
+		 * public void unregisterMBean()
+		 *
+		 * Undoes registerMBean. Does nothing if the metrics are not registered.
+		 */
+		public void unregisterMBean()
+		{
+			if(this.objectName == null)
+			{
+				return;
+			}
+			try
+			{
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+			}
+			catch(JMException e)
+			{
+				throw new IllegalStateException(e);
+			}
+			this.objectName = null;
+		}
+	}
+
+	/**
+	 *
+	 * WAVLMonoid
+	 *
+	 * An associative way to sum up items, for WAVLTree.setAggregate: combine must be associative
+	 * and identity neutral for it. combine need not be commutative, items are combined in key order.
+	 * lift may reject an item by throwing; insert, fingerInsert, join and setAggregate then throw
+	 * before they change the tree.
+	 *
+	 */
+	public interface WAVLMonoid<A>
+	{
+		A identity();
+		A lift(int key, String value);
+		A combine(A left, A right);
+	}
+
+	/**
+	 *
+	 * LongSumMonoid
+	 *
+	 * Sums the infos of the items, read as longs. Items with a null info count as 0.
+	 * lift throws NumberFormatException for an info that is not a long.
+	 *
+	 */
+	public class LongSumMonoid implements WAVLMonoid<Long>
+	{
+		public Long identity()
+		{
+			return 0L;
+		}
+
+		public Long lift(int key, String value)
+		{
+			return (value == null) ? 0L : Long.parseLong(value);
+		}
+
+		public Long combine(Long left, Long right)
+		{
+			return left + right;
+		}
+	}
+
+	/**
+	 *
+	 * LongMaxMonoid
+	 *
+	 * The largest info of the items, read as longs, Long.MIN_VALUE if there is none.
+	 * lift throws NumberFormatException for an info that is not a long.
+	 *
+	 */
+	public class LongMaxMonoid implements WAVLMonoid<Long>
+	{
+		public Long identity()
+		{
+			return Long.MIN_VALUE;
+		}
+
+		public Long lift(int key, String value)
+		{
+			return (value == null) ? Long.MIN_VALUE : Long.parseLong(value);
+		}
+
+		public Long combine(Long left, Long right)
+		{
+			return Math.max(left, right);
+		}
+	}
+
+	/**
+	 *
+	 * FrozenWAVLTree
+	 *
+	 * An immutable, read only copy of a WAVLTree (see WAVLTree.freeze) laid out for the cache.
+	 * The keys are kept twice: sorted, next to the infos, for select, rank and ranges,
+	 * and in Eytzinger order - the BFS order of a complete binary search tree, sons of slot j
+	 * at 2j and 2j+1 - for search. A descent there reads slots that lie together at the top
+	 * and ahead of each other further down, instead of one heap object per level, and picks
+	 * the son with arithmetic instead of a branch.
+	 * thaw() builds a mutable WAVLTree from it again in O(n).
+	 *
+	 */
+	public class FrozenWAVLTree {
+		
+		private final int[] keys;
+		private final String[] values;
+		// eytzinger[j] for 1 <= j <= n is a key, sons of slot j at 2j and 2j+1
+		private final int[] eytzinger;
+		// the index in keys of the key in eytzinger[j]
+		private final int[] position;
+		
+		/**
+		 * public FrozenWAVLTree(int[] keys, String[] values)
+		 *
+		 * Builds the read index of the items (keys[j], values[j]) in O(n), keys must be strictly increasing.
+		 * The arrays are kept, not copied.
+		 */
+		public FrozenWAVLTree(int[] keys, String[] values)
+		{
+			if(keys.length != values.length)
+			{
+				throw new IllegalArgumentException("got " + keys.length + " keys but " + values.length + " values");
+			}
+			for(int j = 1; j < keys.length; j++)
+			{
+				if(keys[j - 1] >= keys[j])
+				{
+					throw new IllegalArgumentException("keys are not strictly increasing at index " + j);
+				}
+			}
+			this.keys = keys;
+			this.values = values;
+			this.eytzinger = new int[keys.length + 1];
+			this.position = new int[keys.length + 1];
+			this.fill(1, 0);
+		}
+		
+		// fills the subtree of slot j in order with keys from index next on, returns the next unused index
+		private int fill(int j, int next)
+		{
+			if(j > this.keys.length)
+			{
+				return next;
+			}
+			next = this.fill(2 * j, next);
+			this.eytzinger[j] = this.keys[next];
+			this.position[j] = next;
+			return this.fill(2 * j + 1, next + 1);
+		}
+		
+		/**
+		 * public int lowerBound(int k)
+		 *
+		 * Returns the index in sorted order of the smallest key >= k, or size() if there is none.
+		 * The descent always runs to the bottom, then the last left turn is recovered from the
+		 * trailing one bits of the final slot number.
+		 */
+		public int lowerBound(int k)
+		{
+			int[] eytzinger = this.eytzinger;
+			int n = this.keys.length;
+			int j = 1;
+			while(j <= n)
+			{
+				j = 2 * j + ((eytzinger[j] < k) ? 1 : 0);
+			}
+			j >>>= Integer.numberOfTrailingZeros(~j) + 1;
+			return (j == 0) ? n : this.position[j];
+		}
+		
+		/**
+		 * public boolean empty()
+		 *
+		 * returns true if and only if the tree is empty
+		 *
+		 */
+		public boolean empty()
+		{
+			return this.keys.length == 0;
+		}
+		
+		/**
+		 * public int size()
+		 *
+		 * Returns the number of items in the tree.
+		 */
+		public int size()
+		{
+			return this.keys.length;
+		}
+		
+		/**
+		 * public String search(int k)
+		 *
+		 * returns the info of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 */
+		public String search(int k)
+		{
+			int index = this.lowerBound(k);
+			return (index < this.keys.length && this.keys[index] == k) ? this.values[index] : null;
+		}
+		
+		/**
+		 * public String min()
+		 *
+		 * Returns the info of the item with the smallest key in the tree,
+		 * or null if the tree is empty
+		 */
+		public String min()
+		{
+			return this.empty() ? null : this.values[0];
+		}
+		
+		/**
+		 * public String max()
+		 *
+		 * Returns the info of the item with the largest key in the tree,
+		 * or null if the tree is empty
+		 */
+		public String max()
+		{
+			return this.empty() ? null : this.values[this.keys.length - 1];
+		}
+		
+		/**
+		 * public String select(int i)
+		 *
+		 * Returns the info of the i'th smallest key (1-based), or "-1" if i is out of range, in O(1).
+		 */
+		public String select(int i)
+		{
+			return (i < 1 || i > this.keys.length) ? "-1" : this.values[i - 1];
+		}
+		
+		/**
+		 * public int rank(int k)
+		 *
+		 * Returns the position of key k in the sorted order of the keys (1-based),
+		 * or -1 if an item with key k does not exist in the tree.
+		 */
+		public int rank(int k)
+		{
+			int index = this.lowerBound(k);
+			return (index < this.keys.length && this.keys[index] == k) ? index + 1 : -1;
+		}
+		
+		/**
+		 * public int rangeCount(int lo, int hi)
+		 *
+		 * Returns the number of keys k in the tree with lo <= k < hi.
+		 */
+		public int rangeCount(int lo, int hi)
+		{
+			return (hi <= lo) ? 0 : this.lowerBound(hi) - this.lowerBound(lo);
+		}
+		
+		/**
+		 * public int[] keysInRange(int lo, int hi)
+		 *
+		 * Returns the sorted keys k in the tree with lo <= k < hi.
+		 */
+		public int[] keysInRange(int lo, int hi)
+		{
+			int from = this.lowerBound(lo);
+			return Arrays.copyOfRange(this.keys, from, from + this.rangeCount(lo, hi));
+		}
+		
+		/**
+		 * public String[] infoInRange(int lo, int hi)
+		 *
+		 * Returns the infos of the keys k in the tree with lo <= k < hi, sorted by their keys.
+		 */
+		public String[] infoInRange(int lo, int hi)
+		{
+			int from = this.lowerBound(lo);
+			return Arrays.copyOfRange(this.values, from, from + this.rangeCount(lo, hi));
+		}
+		
+		/**
+		 * public int[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the tree.
+		 */
+		public int[] keysToArray()
+		{
+			return this.keys.clone();
+		}
+		
+		/**
+		 * public String[] infoToArray()
+		 *
+		 * Returns an array which contains all info in the tree, sorted by their respective keys.
+		 */
+		public String[] infoToArray()
+		{
+			return this.values.clone();
+		}
+		
+		/**
+		 * public WAVLTree thaw()
+		 *
+		 * Returns a new mutable WAVLTree with the items of this tree, built in O(n).
+		 */
+		public WAVLTree thaw()
+		{
+			return fromSorted(this.keys.clone(), this.values.clone());
+		}
+	}
+
+	/**
+	 *
+	 * ArrayWAVLTree
+	 *
+	 * A WAVL Tree with the same interface as WAVLTree that keeps no node objects.
+	 * Every node is a slot in the parallel arrays below, slot 0 plays the external node
+	 * (rank -1, size 0), so children are plain ints and a tree of n keys costs
+	 * about 28 bytes per entry plus its value.
+	 * Slots of deleted nodes are chained through rightSons into a free list and reused.
+	 * Given a WAVLValueArena the values are interned there instead and a slot holds a 4 byte handle,
+	 * so repeated values are stored once and no String object is kept per entry;
+	 * a value is decoded only when search, select, min, max or infoToArray return it.
+	 *
+	 */
+	public class ArrayWAVLTree {
+		
+		private static final int EXTERNAL = 0;
+		
+		private int[] keys;
+		// the infos, or null if they are kept in arena
+		private String[] values;
+		// the handles of the infos in arena, or null if there is none
+		private int[] valueHandles;
+		private final WAVLValueArena arena;
+		private int[] ranks;
+		private int[] subTreeSizes;
+		private int[] parents;
+		private int[] leftSons;
+		private int[] rightSons;
+		private int root;
+		private int min;
+		private int max;
+		private int freeList;
+		private int nextSlot;
+		
+		public ArrayWAVLTree()
+		{
+			this(16);
+		}
+		
+		public ArrayWAVLTree(int capacity)
+		{
+			this(capacity, null);
+		}
+		
+		/**
+		 * public ArrayWAVLTree(int capacity, WAVLValueArena arena)
+		 *
+		 * Creates an empty tree with room for capacity keys before it grows.
+		 * If arena is not null the infos are interned in it, see WAVLValueArena,
+		 * and the tree keeps only their int handles; an arena may be shared by several trees.
+		 */
+		public ArrayWAVLTree(int capacity, WAVLValueArena arena)
+		{
+			capacity = Math.max(capacity, 1) + 1;
+			this.arena = arena;
+			this.keys = new int[capacity];
+			if(arena == null)
+			{
+				this.values = new String[capacity];
+			}
+			else
+			{
+				this.valueHandles = new int[capacity];
+			}
+			this.ranks = new int[capacity];
+			this.subTreeSizes = new int[capacity];
+			this.parents = new int[capacity];
+			this.leftSons = new int[capacity];
+			this.rightSons = new int[capacity];
+			this.ranks[EXTERNAL] = -1;
+			this.subTreeSizes[EXTERNAL] = 0;
+			this.root = EXTERNAL;
+			this.min = EXTERNAL;
+			this.max = EXTERNAL;
+			this.freeList = EXTERNAL;
+			this.nextSlot = 1;
+		}
+		
+		/**
+		 * public boolean empty()
+		 *
+		 * returns true if and only if the tree is empty
+		 *
+		 */
+		public boolean empty()
+		{
+			return this.root == EXTERNAL;
+		}
+		
+		/**
+		 * public String search(int k)
+		 *
+		 * returns the info of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 */
+		public String search(int k)
+		{
+			int node = this.searchSlot(k);
+			if(node == EXTERNAL)
+			{
+				return null;
+			}
+			return this.getValue(node);
+		}
+		
+		private int searchSlot(int k)
+		{
+			int current = this.root;
+			while(current != EXTERNAL)
+			{
+				int key = this.keys[current];
+				if(key == k)
+				{
+					return current;
+				}
+				current = (k < key) ? this.leftSons[current] : this.rightSons[current];
+			}
+			return EXTERNAL;
+		}
+		
+		/**
+		 * public int insert(int k, String i)
+		 *
+		 * inserts an item with key k and info i to the WAVL tree.
+		 * the tree must remain valid (keep its invariants).
+		 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+		 * returns -1 if an item with key k already exists in the tree.
+		 */
+		public int insert(int k, String i)
+		{
+			int parent = EXTERNAL;
+			int current = this.root;
+			while(current != EXTERNAL)
+			{
+				int key = this.keys[current];
+				if(key == k)
+				{
+					return -1;
+				}
+				parent = current;
+				current = (k < key) ? this.leftSons[current] : this.rightSons[current];
+			}
+			
+			int node = this.newSlot(k, i, parent);
+			if(parent == EXTERNAL)
+			{
+				this.root = node;
+				this.min = node;
+				this.max = node;
+				return 0;
+			}
+			if(k < this.keys[parent])
+			{
+				this.leftSons[parent] = node;
+			}
+			else
+			{
+				this.rightSons[parent] = node;
+			}
+			if(k < this.keys[this.min])
+			{
+				this.min = node;
+			}
+			if(k > this.keys[this.max])
+			{
+				this.max = node;
+			}
+			for(current = parent; current != EXTERNAL; current = this.parents[current])
+			{
+				this.subTreeSizes[current]++;
+			}
+			return this.rebalanceInsert(parent);
+		}
+		
+		private int rebalanceInsert(int node)
+		{
+			int numRebalance = 0;
+			while(node != EXTERNAL)
+			{
+				int left = this.leftSons[node];
+				int right = this.rightSons[node];
+				int leftDiffRank = this.ranks[node] - this.ranks[left];
+				int rightDiffRank = this.ranks[node] - this.ranks[right];
+				if(leftDiffRank > 0 && rightDiffRank > 0)
+				{
+					return numRebalance;
+				}
+				if(leftDiffRank + rightDiffRank == 1)
+				{//promote
+					this.ranks[node]++;
+					numRebalance++;
+					node = this.parents[node];
+					continue;
+				}
+				if(leftDiffRank == 0)
+				{
+					if(this.ranks[left] - this.ranks[this.leftSons[left]] == 1)
+					{//one rotate
+						this.rotateRight(node);
+						this.ranks[node]--;
+						return numRebalance + 1;
+					}
+					int leftRight = this.rightSons[left];
+					this.rotateLeft(left);
+					this.rotateRight(node);
+					this.ranks[left]--;
+					this.ranks[node]--;
+					this.ranks[leftRight]++;
+					return numRebalance + 2;
+				}
+				else
+				{
+					if(this.ranks[right] - this.ranks[this.rightSons[right]] == 1)
+					{//one rotate
+						this.rotateLeft(node);
+						this.ranks[node]--;
+						return numRebalance + 1;
+					}
+					int rightLeft = this.leftSons[right];
+					this.rotateRight(right);
+					this.rotateLeft(node);
+					this.ranks[right]--;
+					this.ranks[node]--;
+					this.ranks[rightLeft]++;
+					return numRebalance + 2;
+				}
+			}
+			return numRebalance;
+		}
+		
+		/**
+		 * public int delete(int k)
+		 *
+		 * deletes an item with key k from the binary tree, if it is there;
+		 * the tree must remain valid (keep its invariants).
+		 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+		 * returns -1 if an item with key k was not found in the tree.
+		 */
+		public int delete(int k)
+		{
+			int node = this.searchSlot(k);
+			if(node == EXTERNAL)
+			{
+				return -1;
+			}
+			if(node == this.min)
+			{
+				this.min = this.successor(node);
+			}
+			if(node == this.max)
+			{
+				this.max = this.predecessor(node);
+			}
+			if(this.leftSons[node] != EXTERNAL && this.rightSons[node] != EXTERNAL)
+			{// slots are anonymous, so move the successor's item here and unlink the successor's slot
+				int successor = this.successor(node);
+				this.keys[node] = this.keys[successor];
+				this.copyValue(successor, node);
+				if(this.max == successor)
+				{
+					this.max = node;
+				}
+				node = successor;
+			}
+			
+			int son = (this.leftSons[node] != EXTERNAL) ? this.leftSons[node] : this.rightSons[node];
+			int parent = this.parents[node];
+			this.replaceInParent(node, son);
+			this.freeSlot(node);
+			for(int current = parent; current != EXTERNAL; current = this.parents[current])
+			{
+				this.subTreeSizes[current]--;
+			}
+			return this.rebalanceDelete(parent);
+		}
+		
+		private int rebalanceDelete(int node)
+		{
+			int numRebalance = 0;
+			while(node != EXTERNAL)
+			{
+				int left = this.leftSons[node];
+				int right = this.rightSons[node];
+				int parent = this.parents[node];
+				int nodeRank = this.ranks[node];
+				int leftDiffRank = nodeRank - this.ranks[left];
+				int rightDiffRank = nodeRank - this.ranks[right];
+				
+				if(left == EXTERNAL && right == EXTERNAL && nodeRank > 0)
+				{//2,2 leaf - demote
+					this.ranks[node] = 0;
+					numRebalance++;
+					node = parent;
+					continue;
+				}
+				if(leftDiffRank <= 2 && rightDiffRank <= 2)
+				{
+					return numRebalance;
+				}
+				if(leftDiffRank == 2 || rightDiffRank == 2)
+				{//3,2 - demote
+					this.ranks[node]--;
+					numRebalance++;
+					node = parent;
+					continue;
+				}
+				
+				boolean siblingIsRight = (leftDiffRank == 3);
+				int sibling = siblingIsRight ? right : left;
+				int outer = siblingIsRight ? this.rightSons[sibling] : this.leftSons[sibling];
+				int inner = siblingIsRight ? this.leftSons[sibling] : this.rightSons[sibling];
+				int siblingRank = this.ranks[sibling];
+				
+				if(siblingRank - this.ranks[outer] == 2 && siblingRank - this.ranks[inner] == 2)
+				{//double demote
+					this.ranks[node]--;
+					this.ranks[sibling]--;
+					numRebalance += 2;
+					node = parent;
+					continue;
+				}
+				if(siblingRank - this.ranks[outer] == 1)
+				{//one rotate
+					if(siblingIsRight)
+					{
+						this.rotateLeft(node);
+					}
+					else
+					{
+						this.rotateRight(node);
+					}
+					this.ranks[sibling]++;
+					this.ranks[node]--;
+					if(this.leftSons[node] == EXTERNAL && this.rightSons[node] == EXTERNAL)
+					{
+						this.ranks[node] = 0;
+					}
+					return numRebalance + 1;
+				}
+				//double rotate
+				if(siblingIsRight)
+				{
+					this.rotateRight(sibling);
+					this.rotateLeft(node);
+				}
+				else
+				{
+					this.rotateLeft(sibling);
+					this.rotateRight(node);
+				}
+				this.ranks[inner] += 2;
+				this.ranks[sibling]--;
+				this.ranks[node] -= 2;
+				return numRebalance + 2;
+			}
+			return numRebalance;
+		}
+		
+		/**
+		 * public String min()
+		 *
+		 * Returns the info of the item with the smallest key in the tree,
+		 * or null if the tree is empty
+		 */
+		public String min()
+		{
+			return this.getValue(this.min);
+		}
+		
+		/**
+		 * public String max()
+		 *
+		 * Returns the info of the item with the largest key in the tree,
+		 * or null if the tree is empty
+		 */
+		public String max()
+		{
+			return this.getValue(this.max);
+		}
+		
+		/**
+		 * public int[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the tree,
+		 * or an empty array if the tree is empty.
+		 */
+		public int[] keysToArray()
+		{
+			int[] arr = new int[this.size()];
+			int index = 0;
+			for(int node = this.min; node != EXTERNAL; node = this.successor(node))
+			{
+				arr[index++] = this.keys[node];
+			}
+			return arr;
+		}
+		
+		/**
+		 * public String[] infoToArray()
+		 *
+		 * Returns an array which contains all info in the tree,
+		 * sorted by their respective keys,
+		 * or an empty array if the tree is empty.
+		 */
+		public String[] infoToArray()
+		{
+			String[] arr = new String[this.size()];
+			int index = 0;
+			for(int node = this.min; node != EXTERNAL; node = this.successor(node))
+			{
+				arr[index++] = this.getValue(node);
+			}
+			return arr;
+		}
+		
+		/**
+		 * public int size()
+		 *
+		 * Returns the number of nodes in the tree.
+		 *
+		 */
+		public int size()
+		{
+			return this.subTreeSizes[this.root];
+		}
+		
+		/**
+		 * public String select(int i)
+		 *
+		 * Returns the value of the i'th smallest key (return -1 if i is out of range)
+		 *
+		 */
+		public String select(int i)
+		{
+			if(i < 1 || i > this.size())
+			{
+				return "-1";
+			}
+			int current = this.root;
+			while(true)
+			{
+				int leftSize = this.subTreeSizes[this.leftSons[current]];
+				if(i == leftSize + 1)
+				{
+					return this.getValue(current);
+				}
+				else if(i <= leftSize)
+				{
+					current = this.leftSons[current];
+				}
+				else
+				{
+					i -= leftSize + 1;
+					current = this.rightSons[current];
+				}
+			}
+		}
+		
+		/**
+		 * public int rank(int k)
+		 *
+		 * Returns the position of key k in the sorted order of the tree's keys,
+		 * or -1 if an item with key k does not exist in the tree.
+		 *
+		 */
+		public int rank(int k)
+		{
+			int position = 0;
+			int current = this.root;
+			while(current != EXTERNAL)
+			{
+				int key = this.keys[current];
+				if(key == k)
+				{
+					return position + this.subTreeSizes[this.leftSons[current]] + 1;
+				}
+				else if(k < key)
+				{
+					current = this.leftSons[current];
+				}
+				else
+				{
+					position += this.subTreeSizes[this.leftSons[current]] + 1;
+					current = this.rightSons[current];
+				}
+			}
+			return -1;
+		}
+		
+		private int successor(int node)
+		{
+			int current = this.rightSons[node];
+			if(current != EXTERNAL)
+			{
+				while(this.leftSons[current] != EXTERNAL)
+				{
+					current = this.leftSons[current];
+				}
+				return current;
+			}
+			current = node;
+			int parent = this.parents[current];
+			while(parent != EXTERNAL && this.rightSons[parent] == current)
+			{
+				current = parent;
+				parent = this.parents[current];
+			}
+			return parent;
+		}
+		
+		private int predecessor(int node)
+		{
+			int current = this.leftSons[node];
+			if(current != EXTERNAL)
+			{
+				while(this.rightSons[current] != EXTERNAL)
+				{
+					current = this.rightSons[current];
+				}
+				return current;
+			}
+			current = node;
+			int parent = this.parents[current];
+			while(parent != EXTERNAL && this.leftSons[parent] == current)
+			{
+				current = parent;
+				parent = this.parents[current];
+			}
+			return parent;
+		}
+		
+		private void replaceInParent(int node, int son)
+		{
+			int parent = this.parents[node];
+			if(son != EXTERNAL)
+			{
+				this.parents[son] = parent;
+			}
+			if(parent == EXTERNAL)
+			{
+				this.root = son;
+			}
+			else if(this.leftSons[parent] == node)
+			{
+				this.leftSons[parent] = son;
+			}
+			else
+			{
+				this.rightSons[parent] = son;
+			}
+		}
+		
+		// rotates the left son of node up into node's place
+		private void rotateRight(int node)
+		{
+			int left = this.leftSons[node];
+			int leftRight = this.rightSons[left];
+			this.replaceInParent(node, left);
+			this.rightSons[left] = node;
+			this.parents[node] = left;
+			this.leftSons[node] = leftRight;
+			if(leftRight != EXTERNAL)
+			{
+				this.parents[leftRight] = node;
+			}
+			this.subTreeSizes[node] = this.subTreeSizes[leftRight] + this.subTreeSizes[this.rightSons[node]] + 1;
+			this.subTreeSizes[left] = this.subTreeSizes[this.leftSons[left]] + this.subTreeSizes[node] + 1;
+		}
+		
+		// rotates the right son of node up into node's place
+		private void rotateLeft(int node)
+		{
+			int right = this.rightSons[node];
+			int rightLeft = this.leftSons[right];
+			this.replaceInParent(node, right);
+			this.leftSons[right] = node;
+			this.parents[node] = right;
+			this.rightSons[node] = rightLeft;
+			if(rightLeft != EXTERNAL)
+			{
+				this.parents[rightLeft] = node;
+			}
+			this.subTreeSizes[node] = this.subTreeSizes[this.leftSons[node]] + this.subTreeSizes[rightLeft] + 1;
+			this.subTreeSizes[right] = this.subTreeSizes[node] + this.subTreeSizes[this.rightSons[right]] + 1;
+		}
+		
+		private int newSlot(int k, String i, int parent)
+		{
+			int node;
+			if(this.freeList != EXTERNAL)
+			{
+				node = this.freeList;
+				this.freeList = this.rightSons[node];
+			}
+			else
+			{
+				if(this.nextSlot == this.keys.length)
+				{
+					this.grow();
+				}
+				node = this.nextSlot++;
+			}
+			this.keys[node] = k;
+			this.setValue(node, i);
+			this.ranks[node] = 0;
+			this.subTreeSizes[node] = 1;
+			this.parents[node] = parent;
+			this.leftSons[node] = EXTERNAL;
+			this.rightSons[node] = EXTERNAL;
+			return node;
+		}
+		
+		private void freeSlot(int node)
+		{
+			this.setValue(node, null);
+			this.rightSons[node] = this.freeList;
+			this.freeList = node;
+		}
+		
+		private String getValue(int node)
+		{
+			return (this.arena == null) ? this.values[node] : this.arena.get(this.valueHandles[node]);
+		}
+		
+		private void setValue(int node, String i)
+		{
+			if(this.arena == null)
+			{
+				this.values[node] = i;
+			}
+			else
+			{
+				this.valueHandles[node] = this.arena.intern(i);
+			}
+		}
+		
+		private void copyValue(int from, int to)
+		{
+			if(this.arena == null)
+			{
+				this.values[to] = this.values[from];
+			}
+			else
+			{
+				this.valueHandles[to] = this.valueHandles[from];
+			}
+		}
+		
+		private void grow()
+		{
+			int capacity = this.keys.length * 2;
+			this.keys = Arrays.copyOf(this.keys, capacity);
+			if(this.arena == null)
+			{
+				this.values = Arrays.copyOf(this.values, capacity);
+			}
+			else
+			{
+				this.valueHandles = Arrays.copyOf(this.valueHandles, capacity);
+			}
+			this.ranks = Arrays.copyOf(this.ranks, capacity);
+			this.subTreeSizes = Arrays.copyOf(this.subTreeSizes, capacity);
+			this.parents = Arrays.copyOf(this.parents, capacity);
+			this.leftSons = Arrays.copyOf(this.leftSons, capacity);
+			this.rightSons = Arrays.copyOf(this.rightSons, capacity);
+		}
+	}
+
+	/**
+	 *
+	 * WAVLValueArena
+	 *
+	 * A deduplicated store of String values for ArrayWAVLTree, referenced by int handles.
+	 * Every distinct value is kept once, as its UTF-8 length followed by the bytes, bump allocated
+	 * in one ByteBuffer on the heap or off it; a handle is the offset of its value and
+	 * handle 0 stands for null. An open addressing table of handles finds an existing copy on intern.
+	 * Values are never removed, so an arena only grows; handles are ints, so it is limited to 2GB.
+	 * Not thread safe.
+	 *
+	 */
+	public class WAVLValueArena {
+		
+		private static final int INITIAL_CAPACITY = 1 << 12;
+		
+		private ByteBuffer buffer;
+		private final boolean offHeap;
+		// the end of the used space, the first 4 bytes are left unused for handle 0
+		private int end;
+		// handles of the distinct values, 0 for an empty entry, hashes[j] is the hash of table[j]
+		private int[] table;
+		private int[] hashes;
+		private int count;
+		
+		/**
+		 * public WAVLValueArena(boolean offHeap)
+		 *
+		 * Creates an empty arena, in a direct buffer outside the Java heap if offHeap is set.
+		 */
+		public WAVLValueArena(boolean offHeap)
+		{
+			this.offHeap = offHeap;
+			this.buffer = offHeap ? ByteBuffer.allocateDirect(INITIAL_CAPACITY) : ByteBuffer.allocate(INITIAL_CAPACITY);
+			this.end = 4;
+			this.table = new int[64];
+			this.hashes = new int[64];
+			this.count = 0;
+		}
+		
+		/**
+		 * public int intern(String value)
+		 *
+		 * Returns the handle of value, storing it first if the arena holds no equal value.
+		 * Returns 0 for null.
+		 */
+		public int intern(String value)
+		{
+			if(value == null)
+			{
+				return 0;
+			}
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			int hash = Arrays.hashCode(bytes);
+			int mask = this.table.length - 1;
+			int slot = this.spread(hash) & mask;
+			while(this.table[slot] != 0)
+			{
+				if(this.hashes[slot] == hash && this.matches(this.table[slot], bytes))
+				{
+					return this.table[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+			
+			int handle = this.allocate(4 + bytes.length);
+			this.buffer.putInt(handle, bytes.length);
+			for(int j = 0; j < bytes.length; j++)
+			{
+				this.buffer.put(handle + 4 + j, bytes[j]);
+			}
+			this.table[slot] = handle;
+			this.hashes[slot] = hash;
+			this.count++;
+			if(2 * this.count > this.table.length)
+			{
+				this.rehash();
+			}
+			return handle;
+		}
+		
+		/**
+		 * public String get(int handle)
+		 *
+		 * Returns the value of handle, null for handle 0.
+		 */
+		public String get(int handle)
+		{
+			if(handle == 0)
+			{
+				return null;
+			}
+			int length = this.buffer.getInt(handle);
+			if(this.buffer.hasArray())
+			{
+				return new String(this.buffer.array(), this.buffer.arrayOffset() + handle + 4, length, StandardCharsets.UTF_8);
+			}
+			byte[] bytes = new byte[length];
+			for(int j = 0; j < length; j++)
+			{
+				bytes[j] = this.buffer.get(handle + 4 + j);
+			}
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+		
+		/**
+		 * public int distinctValues()
+		 *
+		 * Returns the number of distinct values stored, null not counted.
+		 */
+		public int distinctValues()
+		{
+			return this.count;
+		}
+		
+		/**
+		 * public long memoryUsage()
+		 *
+		 * Returns the number of bytes held by the arena: its buffer, used or not, and its table.
+		 */
+		public long memoryUsage()
+		{
+			return (long) this.buffer.capacity() + 8L * this.table.length;
+		}
+		
+		private boolean matches(int handle, byte[] bytes)
+		{
+			if(this.buffer.getInt(handle) != bytes.length)
+			{
+				return false;
+			}
+			for(int j = 0; j < bytes.length; j++)
+			{
+				if(this.buffer.get(handle + 4 + j) != bytes[j])
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		// mixes the high bits of hash into the low ones used as a table index
+		private int spread(int hash)
+		{
+			return hash ^ (hash >>> 16);
+		}
+		
+		private void rehash()
+		{
+			int[] table = new int[2 * this.table.length];
+			int[] hashes = new int[table.length];
+			int mask = table.length - 1;
+			for(int j = 0; j < this.table.length; j++)
+			{
+				if(this.table[j] != 0)
+				{
+					int slot = this.spread(this.hashes[j]) & mask;
+					while(table[slot] != 0)
+					{
+						slot = (slot + 1) & mask;
+					}
+					table[slot] = this.table[j];
+					hashes[slot] = this.hashes[j];
+				}
+			}
+			this.table = table;
+			this.hashes = hashes;
+		}
+		
+		// bump allocates length bytes at the end of the used space, growing the buffer when needed
+		private int allocate(int length)
+		{
+			int offset = this.end;
+			long end = (long) offset + length;
+			if(end > Integer.MAX_VALUE)
+			{
+				throw new IllegalStateException("value arena is full");
+			}
+			if(end > this.buffer.capacity())
+			{
+				int capacity = (int) Math.min(Math.max(end, 2L * this.buffer.capacity()), Integer.MAX_VALUE);
+				ByteBuffer grown = this.offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+				ByteBuffer used = this.buffer.duplicate();
+				used.clear();
+				used.limit(offset);
+				grown.put(used);
+				this.buffer = grown;
+			}
+			this.end = (int) end;
+			return offset;
+		}
+	}
+
+	/**
+	 *
+	 * MappedWAVLTree
+	 *
+	 * A WAVL Tree with the same interface as WAVLTree whose nodes live in a memory mapped file,
+	 * so a tree written by one process can be reopened and searched by the next one
+	 * without re-inserting anything.
+	 *
+	 * File layout (ints in ByteBuffer's default big endian order):
+	 * a 32 byte header - magic, version, root, min, max, free list head, end of used space -
+	 * followed by node records and values, both bump allocated from the end of used space.
+	 * A node record is key, rank, subtree size, parent, left son, right son and value offset.
+	 * A value is its UTF-8 length followed by the bytes, value offset 0 stands for a null value.
+	 * Node offset 0 (the header) plays the external node.
+	 * Records of deleted nodes are chained through their right son into a free list and reused,
+	 * the space of deleted values is not reclaimed.
+	 * Offsets are ints, so a tree file is limited to 2GB.
+	 *
+	 */
+	public class MappedWAVLTree {
+		
+		private static final int EXTERNAL = 0;
+		private static final int MAGIC = 0x5741564C; // "WAVL"
+		private static final int VERSION = 1;
+		
+		private static final int HEADER_MAGIC = 0;
+		private static final int HEADER_VERSION = 4;
+		private static final int HEADER_ROOT = 8;
+		private static final int HEADER_MIN = 12;
+		private static final int HEADER_MAX = 16;
+		private static final int HEADER_FREE_LIST = 20;
+		private static final int HEADER_END = 24;
+		private static final int HEADER_SIZE = 32;
+		
+		private static final int NODE_KEY = 0;
+		private static final int NODE_RANK = 4;
+		private static final int NODE_SIZE = 8;
+		private static final int NODE_PARENT = 12;
+		private static final int NODE_LEFT = 16;
+		private static final int NODE_RIGHT = 20;
+		private static final int NODE_VALUE = 24;
+		private static final int NODE_RECORD_SIZE = 28;
+		
+		private static final int INITIAL_FILE_SIZE = 1 << 16;
+		
+		private FileChannel channel;
+		private MappedByteBuffer buffer;
+		
+		/**
+		 * public MappedWAVLTree(String path)
+		 *
+		 * Opens the tree stored in the file at path, or creates an empty tree there
+		 * if the file does not exist or is empty.
+		 */
+		public MappedWAVLTree(String path) throws IOException
+		{
+			this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			long fileSize = this.channel.size();
+			if(fileSize == 0)
+			{
+				this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_FILE_SIZE);
+				this.buffer.putInt(HEADER_MAGIC, MAGIC);
+				this.buffer.putInt(HEADER_VERSION, VERSION);
+				this.setRoot(EXTERNAL);
+				this.buffer.putInt(HEADER_MIN, EXTERNAL);
+				this.buffer.putInt(HEADER_MAX, EXTERNAL);
+				this.buffer.putInt(HEADER_FREE_LIST, EXTERNAL);
+				this.buffer.putInt(HEADER_END, HEADER_SIZE);
+			}
+			else
+			{
+				if(fileSize > Integer.MAX_VALUE)
+				{
+					this.channel.close();
+					throw new IOException(path + " is too large to be a tree file");
+				}
+				this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+				if(fileSize < HEADER_SIZE || this.buffer.getInt(HEADER_MAGIC) != MAGIC || this.buffer.getInt(HEADER_VERSION) != VERSION)
+				{
+					this.channel.close();
+					throw new IOException(path + " is not a tree file");
+				}
+			}
+		}
+		
+		/**
+		 * public void force()
+		 *
+		 * Writes all changes made so far to the storage device.
+		 */
+		public void force()
+		{
+			this.buffer.force();
+		}
+		
+		/**
+		 * public void close()
+		 *
+		 * Writes all changes to the storage device and closes the file.
+		 * The tree can not be used after it was closed.
+		 */
+		public void close() throws IOException
+		{
+			this.buffer.force();
+			this.channel.close();
+		}
+		
+		/**
+		 * public boolean empty()
+		 *
+		 * returns true if and only if the tree is empty
+		 *
+		 */
+		public boolean empty()
+		{
+			return this.getRoot() == EXTERNAL;
+		}
+		
+		/**
+		 * public String search(int k)
+		 *
+		 * returns the info of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 */
+		public String search(int k)
+		{
+			int node = this.searchNode(k);
+			if(node == EXTERNAL)
+			{
+				return null;
+			}
+			return this.getValue(node);
+		}
+		
+		private int searchNode(int k)
+		{
+			int current = this.getRoot();
+			while(current != EXTERNAL)
+			{
+				int key = this.getKey(current);
+				if(key == k)
+				{
+					return current;
+				}
+				current = (k < key) ? this.getLeft(current) : this.getRight(current);
+			}
+			return EXTERNAL;
+		}
+		
+		/**
+		 * public int insert(int k, String i)
+		 *
+		 * inserts an item with key k and info i to the WAVL tree.
+		 * the tree must remain valid (keep its invariants).
+		 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+		 * returns -1 if an item with key k already exists in the tree.
+		 * throws UncheckedIOException if the file could not be extended.
+		 */
+		public int insert(int k, String i)
+		{
+			int parent = EXTERNAL;
+			int current = this.getRoot();
+			while(current != EXTERNAL)
+			{
+				int key = this.getKey(current);
+				if(key == k)
+				{
+					return -1;
+				}
+				parent = current;
+				current = (k < key) ? this.getLeft(current) : this.getRight(current);
+			}
+			
+			int node = this.newNode(k, i, parent);
+			if(parent == EXTERNAL)
+			{
+				this.setRoot(node);
+				this.buffer.putInt(HEADER_MIN, node);
+				this.buffer.putInt(HEADER_MAX, node);
+				return 0;
+			}
+			if(k < this.getKey(parent))
+			{
+				this.setLeft(parent, node);
+			}
+			else
+			{
+				this.setRight(parent, node);
+			}
+			if(k < this.getKey(this.buffer.getInt(HEADER_MIN)))
+			{
+				this.buffer.putInt(HEADER_MIN, node);
+			}
+			if(k > this.getKey(this.buffer.getInt(HEADER_MAX)))
+			{
+				this.buffer.putInt(HEADER_MAX, node);
+			}
+			for(current = parent; current != EXTERNAL; current = this.getParent(current))
+			{
+				this.setSubTreeSize(current, this.getSubTreeSize(current) + 1);
+			}
+			return this.rebalanceInsert(parent);
+		}
+		
+		private int rebalanceInsert(int node)
+		{
+			int numRebalance = 0;
+			while(node != EXTERNAL)
+			{
+				int left = this.getLeft(node);
+				int right = this.getRight(node);
+				int nodeRank = this.getRank(node);
+				int leftDiffRank = nodeRank - this.getRank(left);
+				int rightDiffRank = nodeRank - this.getRank(right);
+				if(leftDiffRank > 0 && rightDiffRank > 0)
+				{
+					return numRebalance;
+				}
+				if(leftDiffRank + rightDiffRank == 1)
+				{//promote
+					this.setRank(node, nodeRank + 1);
+					numRebalance++;
+					node = this.getParent(node);
+					continue;
+				}
+				if(leftDiffRank == 0)
+				{
+					if(this.getRank(left) - this.getRank(this.getLeft(left)) == 1)
+					{//one rotate
+						this.rotateRight(node);
+						this.setRank(node, nodeRank - 1);
+						return numRebalance + 1;
+					}
+					int leftRight = this.getRight(left);
+					this.rotateLeft(left);
+					this.rotateRight(node);
+					this.setRank(left, this.getRank(left) - 1);
+					this.setRank(node, nodeRank - 1);
+					this.setRank(leftRight, this.getRank(leftRight) + 1);
+					return numRebalance + 2;
+				}
+				else
+				{
+					if(this.getRank(right) - this.getRank(this.getRight(right)) == 1)
+					{//one rotate
+						this.rotateLeft(node);
+						this.setRank(node, nodeRank - 1);
+						return numRebalance + 1;
+					}
+					int rightLeft = this.getLeft(right);
+					this.rotateRight(right);
+					this.rotateLeft(node);
+					this.setRank(right, this.getRank(right) - 1);
+					this.setRank(node, nodeRank - 1);
+					this.setRank(rightLeft, this.getRank(rightLeft) + 1);
+					return numRebalance + 2;
+				}
+			}
+			return numRebalance;
+		}
+		
+		/**
+		 * public int delete(int k)
+		 *
+		 * deletes an item with key k from the binary tree, if it is there;
+		 * the tree must remain valid (keep its invariants).
+		 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+		 * returns -1 if an item with key k was not found in the tree.
+		 */
+		public int delete(int k)
+		{
+			int node = this.searchNode(k);
+			if(node == EXTERNAL)
+			{
+				return -1;
+			}
+			if(node == this.buffer.getInt(HEADER_MIN))
+			{
+				this.buffer.putInt(HEADER_MIN, this.successor(node));
+			}
+			if(node == this.buffer.getInt(HEADER_MAX))
+			{
+				this.buffer.putInt(HEADER_MAX, this.predecessor(node));
+			}
+			if(this.getLeft(node) != EXTERNAL && this.getRight(node) != EXTERNAL)
+			{// records are anonymous, so move the successor's item here and unlink the successor's record
+				int successor = this.successor(node);
+				this.buffer.putInt(node + NODE_KEY, this.getKey(successor));
+				this.buffer.putInt(node + NODE_VALUE, this.buffer.getInt(successor + NODE_VALUE));
+				if(this.buffer.getInt(HEADER_MAX) == successor)
+				{
+					this.buffer.putInt(HEADER_MAX, node);
+				}
+				node = successor;
+			}
+			
+			int son = (this.getLeft(node) != EXTERNAL) ? this.getLeft(node) : this.getRight(node);
+			int parent = this.getParent(node);
+			this.replaceInParent(node, son);
+			this.setRight(node, this.buffer.getInt(HEADER_FREE_LIST));
+			this.buffer.putInt(HEADER_FREE_LIST, node);
+			for(int current = parent; current != EXTERNAL; current = this.getParent(current))
+			{
+				this.setSubTreeSize(current, this.getSubTreeSize(current) - 1);
+			}
+			return this.rebalanceDelete(parent);
+		}
+		
+		private int rebalanceDelete(int node)
+		{
+			int numRebalance = 0;
+			while(node != EXTERNAL)
+			{
+				int left = this.getLeft(node);
+				int right = this.getRight(node);
+				int parent = this.getParent(node);
+				int nodeRank = this.getRank(node);
+				int leftDiffRank = nodeRank - this.getRank(left);
+				int rightDiffRank = nodeRank - this.getRank(right);
+				
+				if(left == EXTERNAL && right == EXTERNAL && nodeRank > 0)
+				{//2,2 leaf - demote
+					this.setRank(node, 0);
+					numRebalance++;
+					node = parent;
+					continue;
+				}
+				if(leftDiffRank <= 2 && rightDiffRank <= 2)
+				{
+					return numRebalance;
+				}
+				if(leftDiffRank == 2 || rightDiffRank == 2)
+				{//3,2 - demote
+					this.setRank(node, nodeRank - 1);
+					numRebalance++;
+					node = parent;
+					continue;
+				}
+				
+				boolean siblingIsRight = (leftDiffRank == 3);
+				int sibling = siblingIsRight ? right : left;
+				int outer = siblingIsRight ? this.getRight(sibling) : this.getLeft(sibling);
+				int inner = siblingIsRight ? this.getLeft(sibling) : this.getRight(sibling);
+				int siblingRank = this.getRank(sibling);
+				
+				if(siblingRank - this.getRank(outer) == 2 && siblingRank - this.getRank(inner) == 2)
+				{//double demote
+					this.setRank(node, nodeRank - 1);
+					this.setRank(sibling, siblingRank - 1);
+					numRebalance += 2;
+					node = parent;
+					continue;
+				}
+				if(siblingRank - this.getRank(outer) == 1)
+				{//one rotate
+					if(siblingIsRight)
+					{
+						this.rotateLeft(node);
+					}
+					else
+					{
+						this.rotateRight(node);
+					}
+					this.setRank(sibling, siblingRank + 1);
+					this.setRank(node, nodeRank - 1);
+					if(this.getLeft(node) == EXTERNAL && this.getRight(node) == EXTERNAL)
+					{
+						this.setRank(node, 0);
+					}
+					return numRebalance + 1;
+				}
+				//double rotate
+				if(siblingIsRight)
+				{
+					this.rotateRight(sibling);
+					this.rotateLeft(node);
+				}
+				else
+				{
+					this.rotateLeft(sibling);
+					this.rotateRight(node);
+				}
+				this.setRank(inner, this.getRank(inner) + 2);
+				this.setRank(sibling, siblingRank - 1);
+				this.setRank(node, nodeRank - 2);
+				return numRebalance + 2;
+			}
+			return numRebalance;
+		}
+		
+		/**
+		 * public String min()
+		 *
+		 * Returns the info of the item with the smallest key in the tree,
+		 * or null if the tree is empty
+		 */
+		public String min()
+		{
+			int node = this.buffer.getInt(HEADER_MIN);
+			return (node == EXTERNAL) ? null : this.getValue(node);
+		}
+		
+		/**
+		 * public String max()
+		 *
+		 * Returns the info of the item with the largest key in the tree,
+		 * or null if the tree is empty
+		 */
+		public String max()
+		{
+			int node = this.buffer.getInt(HEADER_MAX);
+			return (node == EXTERNAL) ? null : this.getValue(node);
+		}
+		
+		/**
+		 * public int[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the tree,
+		 * or an empty array if the tree is empty.
+		 */
+		public int[] keysToArray()
+		{
+			int[] arr = new int[this.size()];
+			int index = 0;
+			for(int node = this.buffer.getInt(HEADER_MIN); node != EXTERNAL; node = this.successor(node))
+			{
+				arr[index++] = this.getKey(node);
+			}
+			return arr;
+		}
+		
+		/**
+		 * public String[] infoToArray()
+		 *
+		 * Returns an array which contains all info in the tree,
+		 * sorted by their respective keys,
+		 * or an empty array if the tree is empty.
+		 */
+		public String[] infoToArray()
+		{
+			String[] arr = new String[this.size()];
+			int index = 0;
+			for(int node = this.buffer.getInt(HEADER_MIN); node != EXTERNAL; node = this.successor(node))
+			{
+				arr[index++] = this.getValue(node);
+			}
+			return arr;
+		}
+		
+		/**
+		 * public int size()
+		 *
+		 * Returns the number of nodes in the tree.
+		 *
+		 */
+		public int size()
+		{
+			return this.getSubTreeSize(this.getRoot());
+		}
+		
+		/**
+		 * public String select(int i)
+		 *
+		 * Returns the value of the i'th smallest key (return -1 if i is out of range)
+		 *
+		 */
+		public String select(int i)
+		{
+			if(i < 1 || i > this.size())
+			{
+				return "-1";
+			}
+			int current = this.getRoot();
+			while(true)
+			{
+				int leftSize = this.getSubTreeSize(this.getLeft(current));
+				if(i == leftSize + 1)
+				{
+					return this.getValue(current);
+				}
+				else if(i <= leftSize)
+				{
+					current = this.getLeft(current);
+				}
+				else
+				{
+					i -= leftSize + 1;
+					current = this.getRight(current);
+				}
+			}
+		}
+		
+		/**
+		 * public int rank(int k)
+		 *
+		 * Returns the position of key k in the sorted order of the tree's keys,
+		 * or -1 if an item with key k does not exist in the tree.
+		 *
+		 */
+		public int rank(int k)
+		{
+			int position = 0;
+			int current = this.getRoot();
+			while(current != EXTERNAL)
+			{
+				int key = this.getKey(current);
+				if(key == k)
+				{
+					return position + this.getSubTreeSize(this.getLeft(current)) + 1;
+				}
+				else if(k < key)
+				{
+					current = this.getLeft(current);
+				}
+				else
+				{
+					position += this.getSubTreeSize(this.getLeft(current)) + 1;
+					current = this.getRight(current);
+				}
+			}
+			return -1;
+		}
+		
+		private int getRoot()
+		{
+			return this.buffer.getInt(HEADER_ROOT);
+		}
+		
+		private void setRoot(int node)
+		{
+			this.buffer.putInt(HEADER_ROOT, node);
+		}
+		
+		private int getKey(int node)
+		{
+			return this.buffer.getInt(node + NODE_KEY);
+		}
+		
+		private int getRank(int node)
+		{
+			return (node == EXTERNAL) ? -1 : this.buffer.getInt(node + NODE_RANK);
+		}
+		
+		private void setRank(int node, int rank)
+		{
+			this.buffer.putInt(node + NODE_RANK, rank);
+		}
+		
+		private int getSubTreeSize(int node)
+		{
+			return (node == EXTERNAL) ? 0 : this.buffer.getInt(node + NODE_SIZE);
+		}
+		
+		private void setSubTreeSize(int node, int size)
+		{
+			this.buffer.putInt(node + NODE_SIZE, size);
+		}
+		
+		private int getParent(int node)
+		{
+			return this.buffer.getInt(node + NODE_PARENT);
+		}
+		
+		private void setParent(int node, int parent)
+		{
+			this.buffer.putInt(node + NODE_PARENT, parent);
+		}
+		
+		private int getLeft(int node)
+		{
+			return this.buffer.getInt(node + NODE_LEFT);
+		}
+		
+		private void setLeft(int node, int left)
+		{
+			this.buffer.putInt(node + NODE_LEFT, left);
+		}
+		
+		private int getRight(int node)
+		{
+			return this.buffer.getInt(node + NODE_RIGHT);
+		}
+		
+		private void setRight(int node, int right)
+		{
+			this.buffer.putInt(node + NODE_RIGHT, right);
+		}
+		
+		private String getValue(int node)
+		{
+			int offset = this.buffer.getInt(node + NODE_VALUE);
+			if(offset == 0)
+			{
+				return null;
+			}
+			byte[] bytes = new byte[this.buffer.getInt(offset)];
+			for(int j = 0; j < bytes.length; j++)
+			{
+				bytes[j] = this.buffer.get(offset + 4 + j);
+			}
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+		
+		private int successor(int node)
+		{
+			int current = this.getRight(node);
+			if(current != EXTERNAL)
+			{
+				while(this.getLeft(current) != EXTERNAL)
+				{
+					current = this.getLeft(current);
+				}
+				return current;
+			}
+			current = node;
+			int parent = this.getParent(current);
+			while(parent != EXTERNAL && this.getRight(parent) == current)
+			{
+				current = parent;
+				parent = this.getParent(current);
+			}
+			return parent;
+		}
+		
+		private int predecessor(int node)
+		{
+			int current = this.getLeft(node);
+			if(current != EXTERNAL)
+			{
+				while(this.getRight(current) != EXTERNAL)
+				{
+					current = this.getRight(current);
+				}
+				return current;
+			}
+			current = node;
+			int parent = this.getParent(current);
+			while(parent != EXTERNAL && this.getLeft(parent) == current)
+			{
+				current = parent;
+				parent = this.getParent(current);
+			}
+			return parent;
+		}
+		
+		private void replaceInParent(int node, int son)
+		{
+			int parent = this.getParent(node);
+			if(son != EXTERNAL)
+			{
+				this.setParent(son, parent);
+			}
+			if(parent == EXTERNAL)
+			{
+				this.setRoot(son);
+			}
+			else if(this.getLeft(parent) == node)
+			{
+				this.setLeft(parent, son);
+			}
+			else
+			{
+				this.setRight(parent, son);
+			}
+		}
+		
+		// rotates the left son of node up into node's place
+		private void rotateRight(int node)
+		{
+			int left = this.getLeft(node);
+			int leftRight = this.getRight(left);
+			this.replaceInParent(node, left);
+			this.setRight(left, node);
+			this.setParent(node, left);
+			this.setLeft(node, leftRight);
+			if(leftRight != EXTERNAL)
+			{
+				this.setParent(leftRight, node);
+			}
+			this.setSubTreeSize(node, this.getSubTreeSize(leftRight) + this.getSubTreeSize(this.getRight(node)) + 1);
+			this.setSubTreeSize(left, this.getSubTreeSize(this.getLeft(left)) + this.getSubTreeSize(node) + 1);
+		}
+		
+		// rotates the right son of node up into node's place
+		private void rotateLeft(int node)
+		{
+			int right = this.getRight(node);
+			int rightLeft = this.getLeft(right);
+			this.replaceInParent(node, right);
+			this.setLeft(right, node);
+			this.setParent(node, right);
+			this.setRight(node, rightLeft);
+			if(rightLeft != EXTERNAL)
+			{
+				this.setParent(rightLeft, node);
+			}
+			this.setSubTreeSize(node, this.getSubTreeSize(this.getLeft(node)) + this.getSubTreeSize(rightLeft) + 1);
+			this.setSubTreeSize(right, this.getSubTreeSize(node) + this.getSubTreeSize(this.getRight(right)) + 1);
+		}
+		
+		private int newNode(int k, String i, int parent)
+		{
+			int valueOffset = 0;
+			if(i != null)
+			{
+				byte[] bytes = i.getBytes(StandardCharsets.UTF_8);
+				valueOffset = this.allocate(4 + bytes.length);
+				this.buffer.putInt(valueOffset, bytes.length);
+				for(int j = 0; j < bytes.length; j++)
+				{
+					this.buffer.put(valueOffset + 4 + j, bytes[j]);
+				}
+			}
+			int node = this.buffer.getInt(HEADER_FREE_LIST);
+			if(node != EXTERNAL)
+			{
+				this.buffer.putInt(HEADER_FREE_LIST, this.getRight(node));
+			}
+			else
+			{
+				node = this.allocate(NODE_RECORD_SIZE);
+			}
+			this.buffer.putInt(node + NODE_KEY, k);
+			this.setRank(node, 0);
+			this.setSubTreeSize(node, 1);
+			this.setParent(node, parent);
+			this.setLeft(node, EXTERNAL);
+			this.setRight(node, EXTERNAL);
+			this.buffer.putInt(node + NODE_VALUE, valueOffset);
+			return node;
+		}
+		
+		// bump allocates length bytes at the end of the used space, growing the file when needed
+		private int allocate(int length)
+		{
+			int offset = this.buffer.getInt(HEADER_END);
+			long end = (long) offset + length;
+			if(end > Integer.MAX_VALUE)
+			{
+				throw new UncheckedIOException(new IOException("tree file is full"));
+			}
+			if(end > this.buffer.capacity())
+			{
+				long capacity = Math.min(Math.max(end, 2L * this.buffer.capacity()), Integer.MAX_VALUE);
+				try
+				{
+					this.buffer.force();
+					this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+				}
+				catch(IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			}
+			this.buffer.putInt(HEADER_END, (int) end);
+			return offset;
+		}
+	}
+
+	/**
+	 *
+	 * ConcurrentWAVLTree
+	 *
+	 * A thread safe WAVL Tree, wrapping a WAVLTree with a StampedLock used as a seqlock.
+	 * search, min, max, select, rank and size first run without locking and validate
+	 * the lock's stamp afterwards, retrying under the read lock only if a writer got in
+	 * between, so readers never write shared memory and scale with the number of cores.
+	 * insert and delete run under the write lock.
+	 * Optimistic descents are bounded by MAX_HEIGHT steps, since an unsynchronized
+	 * reader may see a rotation half done.
+	 *
+	 */
+	public class ConcurrentWAVLTree {
+		
+		// a WAVL tree of at most 2^32 nodes has height below 2*32
+		private static final int MAX_HEIGHT = 64;
+		
+		private final WAVLTree tree;
+		private final StampedLock lock;
+		
+		public ConcurrentWAVLTree()
+		{
+			this.tree = new WAVLTree();
+			this.lock = new StampedLock();
+		}
+		
+		/**
+		 * public boolean empty()
+		 *
+		 * returns true if and only if the tree is empty
+		 *
+		 */
+		public boolean empty()
+		{
+			return this.size() == 0;
+		}
+		
+		/**
+		 * public String search(int k)
+		 *
+		 * returns the info of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 */
+		public String search(int k)
+		{
+			long stamp = this.lock.tryOptimisticRead();
+			if(stamp != 0)
+			{
+				WAVLTree.WAVLNode node = this.searchNode(k);
+				String value = (node == null) ? null : node.getValue();
+				if(this.lock.validate(stamp))
+				{
+					return value;
+				}
+			}
+			stamp = this.lock.readLock();
+			try
+			{
+				WAVLTree.WAVLNode node = this.searchNode(k);
+				return (node == null) ? null : node.getValue();
+			}
+			finally
+			{
+				this.lock.unlockRead(stamp);
+			}
+		}
+		
+		/**
+		 * public int insert(int k, String i)
+		 *
+		 * inserts an item with key k and info i to the WAVL tree, see WAVLTree.insert.
+		 */
+		public int insert(int k, String i)
+		{
+			long stamp = this.lock.writeLock();
+			try
+			{
+				return this.tree.insert(k, i);
+			}
+			finally
+			{
+				this.lock.unlockWrite(stamp);
+			}
+		}
+		
+		/**
+		 * public int delete(int k)
+		 *
+		 * deletes an item with key k from the WAVL tree, see WAVLTree.delete.
+		 */
+		public int delete(int k)
+		{
+			long stamp = this.lock.writeLock();
+			try
+			{
+				return this.tree.delete(k);
+			}
+			finally
+			{
+				this.lock.unlockWrite(stamp);
+			}
+		}
+		
+		/**
+		 * public String min()
+		 *
+		 * Returns the info of the item with the smallest key in the tree,
+		 * or null if the tree is empty
+		 */
+		public String min()
+		{
+			long stamp = this.lock.tryOptimisticRead();
+			WAVLTree.WAVLNode node = this.tree.min;
+			String value = (node == null) ? null : node.getValue();
+			if(stamp != 0 && this.lock.validate(stamp))
+			{
+				return value;
+			}
+			stamp = this.lock.readLock();
+			try
+			{
+				return this.tree.min();
+			}
+			finally
+			{
+				this.lock.unlockRead(stamp);
+			}
+		}
+		
+		/**
+		 * public String max()
+		 *
+		 * Returns the info of the item with the largest key in the tree,
+		 * or null if the tree is empty
+		 */
+		public String max()
+		{
+			long stamp = this.lock.tryOptimisticRead();
+			WAVLTree.WAVLNode node = this.tree.max;
+			String value = (node == null) ? null : node.getValue();
+			if(stamp != 0 && this.lock.validate(stamp))
+			{
+				return value;
+			}
+			stamp = this.lock.readLock();
+			try
+			{
+				return this.tree.max();
+			}
+			finally
+			{
+				this.lock.unlockRead(stamp);
+			}
+		}
+		
+		/**
+		 * public int size()
+		 *
+		 * Returns the number of nodes in the tree.
+		 *
+		 */
+		public int size()
+		{
+			long stamp = this.lock.tryOptimisticRead();
+			WAVLTree.WAVLNode root = this.tree.getRoot();
+			int size = (root == null) ? 0 : root.getSubTreeSize();
+			if(stamp != 0 && this.lock.validate(stamp))
+			{
+				return size;
+			}
+			stamp = this.lock.readLock();
+			try
+			{
+				return this.tree.size();
+			}
+			finally
+			{
+				this.lock.unlockRead(stamp);
+			}
+		}
+		
+		/**
+		 * public String select(int i)
+		 *
+		 * Returns the value of the i'th smallest key (return -1 if i is out of range)
+		 *
+		 */
+		public String select(int i)
+		{
+			long stamp = this.lock.tryOptimisticRead();
+			if(stamp != 0)
+			{
+				WAVLTree.WAVLNode node = this.selectNode(i);
+				String value = (node == null) ? "-1" : node.getValue();
+				if(this.lock.validate(stamp))
+				{
+					return value;
+				}
+			}
+			stamp = this.lock.readLock();
+			try
+			{
+				return this.tree.select(i);
+			}
+			finally
+			{
+				this.lock.unlockRead(stamp);
+			}
+		}
+		
+		/**
+		 * public int rank(int k)
+		 *
+		 * Returns the position of key k in the sorted order of the tree's keys,
+		 * or -1 if an item with key k does not exist in the tree.
+		 *
+		 */
+		public int rank(int k)
+		{
+			long stamp = this.lock.tryOptimisticRead();
+			if(stamp != 0)
+			{
+				int position = this.optimisticRank(k);
+				if(this.lock.validate(stamp))
+				{
+					return position;
+				}
+			}
+			stamp = this.lock.readLock();
+			try
+			{
+				return this.tree.rank(k);
+			}
+			finally
+			{
+				this.lock.unlockRead(stamp);
+			}
+		}
+		
+		/**
+		 * public int[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the tree, read under the read lock.
+		 */
+		public int[] keysToArray()
+		{
+			long stamp = this.lock.readLock();
+			try
+			{
+				return this.tree.keysToArray();
+			}
+			finally
+			{
+				this.lock.unlockRead(stamp);
+			}
+		}
+		
+		/**
+		 * public String[] infoToArray()
+		 *
+		 * Returns an array which contains all info in the tree sorted by their respective keys,
+		 * read under the read lock.
+		 */
+		public String[] infoToArray()
+		{
+			long stamp = this.lock.readLock();
+			try
+			{
+				return this.tree.infoToArray();
+			}
+			finally
+			{
+				this.lock.unlockRead(stamp);
+			}
+		}
+		
+		// the methods below may run concurrently with a writer - they never trust
+		// a pointer to be non null and give up after MAX_HEIGHT steps,
+		// their result is only used if the stamp validates
+		
+		private WAVLTree.WAVLNode searchNode(int k)
+		{
+			WAVLTree.WAVLNode currentNode = this.tree.getRoot();
+			for(int steps = 0; currentNode != null && currentNode.isInnerNode() && steps <= MAX_HEIGHT; steps++)
+			{
+				int key = currentNode.getKey();
+				if(key == k)
+				{
+					return currentNode;
+				}
+				currentNode = (k < key) ? currentNode.getLeft() : currentNode.getRight();
+			}
+			return null;
+		}
+		
+		private WAVLTree.WAVLNode selectNode(int i)
+		{
+			WAVLTree.WAVLNode currentNode = this.tree.getRoot();
+			for(int steps = 0; currentNode != null && currentNode.isInnerNode() && steps <= MAX_HEIGHT; steps++)
+			{
+				WAVLTree.WAVLNode left = currentNode.getLeft();
+				if(left == null)
+				{
+					return null;
+				}
+				int leftSize = left.getSubTreeSize();
+				if(i == leftSize + 1)
+				{
+					return currentNode;
+				}
+				else if(i <= leftSize)
+				{
+					currentNode = left;
+				}
+				else
+				{
+					i -= leftSize + 1;
+					currentNode = currentNode.getRight();
+				}
+			}
+			return null;
+		}
+		
+		private int optimisticRank(int k)
+		{
+			int position = 0;
+			WAVLTree.WAVLNode currentNode = this.tree.getRoot();
+			for(int steps = 0; currentNode != null && currentNode.isInnerNode() && steps <= MAX_HEIGHT; steps++)
+			{
+				WAVLTree.WAVLNode left = currentNode.getLeft();
+				if(left == null)
+				{
+					return -1;
+				}
+				int key = currentNode.getKey();
+				if(key == k)
+				{
+					return position + left.getSubTreeSize() + 1;
+				}
+				else if(k < key)
+				{
+					currentNode = left;
+				}
+				else
+				{
+					position += left.getSubTreeSize() + 1;
+					currentNode = currentNode.getRight();
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 *
+	 * PersistentWAVLTree
+	 *
+	 * A WAVL Tree whose nodes are never modified once built. insert and delete copy only
+	 * the O(log n) nodes on the path to the changed key, rebalancing the copies on the way up,
+	 * and then publish the new root. Nodes have no parent pointers, the path is the recursion stack.
+	 * snapshot() is O(1): it shares the current root, and later updates of either tree never
+	 * touch the other. Readers take no lock and never block the writers, writers are serialized.
+	 * Rebalancing is the same as in WAVLTree, so insert and delete return the same counts.
+	 * External nodes are null, with rank -1 and subtree size 0.
+	 *
+	 */
+	public class PersistentWAVLTree {
+		
+		// replaced, never modified, by every successful insert and delete
+		private volatile Node root;
+		
+		private class Node {
+			private final int key;
+			private final String value;
+			private final int rank;
+			private final int subTreeSize;
+			private final Node left;
+			private final Node right;
+			
+			private Node(int key, String value, int rank, Node left, Node right)
+			{
+				this.key = key;
+				this.value = value;
+				this.rank = rank;
+				this.left = left;
+				this.right = right;
+				this.subTreeSize = sizeOf(left) + sizeOf(right) + 1;
+			}
+		}
+		
+		public PersistentWAVLTree()
+		{
+			this.root = null;
+		}
+		
+		private PersistentWAVLTree(Node root)
+		{
+			this.root = root;
+		}
+		
+		/**
+		 * public PersistentWAVLTree snapshot()
+		 *
+		 * Returns a tree holding the current items of this tree, in O(1).
+		 * Updates of this tree after the call are not seen by the snapshot and vice versa.
+		 */
+		public PersistentWAVLTree snapshot()
+		{
+			return new PersistentWAVLTree(this.root);
+		}
+		
+		/**
+		 * public boolean empty()
+		 *
+		 * returns true if and only if the tree is empty
+		 *
+		 */
+		public boolean empty()
+		{
+			return this.root == null;
+		}
+		
+		/**
+		 * public int size()
+		 *
+		 * Returns the number of nodes in the tree.
+		 *
+		 */
+		public int size()
+		{
+			return this.sizeOf(this.root);
+		}
+		
+		/**
+		 * public String search(int k)
+		 *
+		 * returns the info of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 */
+		public String search(int k)
+		{
+			Node node = this.root;
+			while(node != null)
+			{
+				if(node.key == k)
+				{
+					return node.value;
+				}
+				node = (k < node.key) ? node.left : node.right;
+			}
+			return null;
+		}
+		
+		/**
+		 * public String min()
+		 *
+		 * Returns the info of the item with the smallest key in the tree,
+		 * or null if the tree is empty
+		 */
+		public String min()
+		{
+			Node node = this.root;
+			if(node == null)
+			{
+				return null;
+			}
+			while(node.left != null)
+			{
+				node = node.left;
+			}
+			return node.value;
+		}
+		
+		/**
+		 * public String max()
+		 *
+		 * Returns the info of the item with the largest key in the tree,
+		 * or null if the tree is empty
+		 */
+		public String max()
+		{
+			Node node = this.root;
+			if(node == null)
+			{
+				return null;
+			}
+			while(node.right != null)
+			{
+				node = node.right;
+			}
+			return node.value;
+		}
+		
+		/**
+		 * public String select(int i)
+		 *
+		 * Returns the info of the i'th smallest key (1-based), or "-1" if i is out of range.
+		 */
+		public String select(int i)
+		{
+			Node node = this.root;
+			if(i < 1 || i > this.sizeOf(node))
+			{
+				return "-1";
+			}
+			while(true)
+			{
+				int leftSize = this.sizeOf(node.left);
+				if(i == leftSize + 1)
+				{
+					return node.value;
+				}
+				else if(i <= leftSize)
+				{
+					node = node.left;
+				}
+				else
+				{
+					i -= leftSize + 1;
+					node = node.right;
+				}
+			}
+		}
+		
+		/**
+		 * public int[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the tree,
+		 * or an empty array if the tree is empty.
+		 */
+		public int[] keysToArray()
+		{
+			Node root = this.root;
+			int[] arr = new int[this.sizeOf(root)];
+			this.keysToArray(root, arr, 0);
+			return arr;
+		}
+		
+		private int keysToArray(Node node, int[] arr, int currentIndex)
+		{
+			while(node != null)
+			{
+				currentIndex = this.keysToArray(node.left, arr, currentIndex);
+				arr[currentIndex++] = node.key;
+				node = node.right;
+			}
+			return currentIndex;
+		}
+		
+		/**
+		 * public String[] infoToArray()
+		 *
+		 * Returns an array which contains all info in the tree,
+		 * sorted by their respective keys,
+		 * or an empty array if the tree is empty.
+		 */
+		public String[] infoToArray()
+		{
+			Node root = this.root;
+			String[] arr = new String[this.sizeOf(root)];
+			this.infoToArray(root, arr, 0);
+			return arr;
+		}
+		
+		private int infoToArray(Node node, String[] arr, int currentIndex)
+		{
+			while(node != null)
+			{
+				currentIndex = this.infoToArray(node.left, arr, currentIndex);
+				arr[currentIndex++] = node.value;
+				node = node.right;
+			}
+			return currentIndex;
+		}
+		
+		/**
+		 * public int insert(int k, String i)
+		 *
+		 * inserts an item with key k and info i to the WAVL tree, see WAVLTree.insert.
+		 * Copies the nodes on the search path, the previous version stays intact.
+		 */
+		public synchronized int insert(int k, String i)
+		{
+			Node root = this.root;
+			int[] numRebalance = new int[1];
+			Node newRoot = this.insert(root, k, i, numRebalance);
+			if(newRoot == root)
+			{
+				return -1;
+			}
+			this.root = newRoot;
+			return numRebalance[0];
+		}
+		
+		/**
+		 * public int delete(int k)
+		 *
+		 * deletes an item with key k from the WAVL tree, see WAVLTree.delete.
+		 * Copies the nodes on the search path, the previous version stays intact.
+		 */
+		public synchronized int delete(int k)
+		{
+			Node root = this.root;
+			int[] numRebalance = new int[1];
+			Node newRoot = this.delete(root, k, numRebalance);
+			if(newRoot == root)
+			{
+				return -1;
+			}
+			this.root = newRoot;
+			return numRebalance[0];
+		}
+		
+		private int sizeOf(Node node)
+		{
+			return (node == null) ? 0 : node.subTreeSize;
+		}
+		
+		private int rankOf(Node node)
+		{
+			return (node == null) ? -1 : node.rank;
+		}
+		
+		/**
+		 * private Node insert(Node node, int k, String i, int[] numRebalance)
+		 *
+		 * Returns a copy of the subtree of node with (k, i) inserted and rebalanced,
+		 * or node itself if k is already in it.
+		 */
+		private Node insert(Node node, int k, String i, int[] numRebalance)
+		{
+			if(node == null)
+			{
+				return new Node(k, i, 0, null, null);
+			}
+			if(k == node.key)
+			{
+				return node;
+			}
+			if(k < node.key)
+			{
+				Node left = this.insert(node.left, k, i, numRebalance);
+				if(left == node.left)
+				{
+					return node;
+				}
+				if(node.rank != left.rank)
+				{
+					return new Node(node.key, node.value, node.rank, left, node.right);
+				}
+				if(node.rank - this.rankOf(node.right) == 1)//promote
+				{
+					numRebalance[0]++;
+					return new Node(node.key, node.value, node.rank + 1, left, node.right);
+				}
+				if(left.rank - this.rankOf(left.right) == 2)//single rotation
+				{
+					numRebalance[0]++;
+					Node z = new Node(node.key, node.value, node.rank - 1, left.right, node.right);
+					return new Node(left.key, left.value, left.rank, left.left, z);
+				}
+				//double rotation
+				numRebalance[0] += 2;
+				Node y = left.right;
+				Node x = new Node(left.key, left.value, left.rank - 1, left.left, y.left);
+				Node z = new Node(node.key, node.value, node.rank - 1, y.right, node.right);
+				return new Node(y.key, y.value, y.rank + 1, x, z);
+			}
+			else
+			{
+				Node right = this.insert(node.right, k, i, numRebalance);
+				if(right == node.right)
+				{
+					return node;
+				}
+				if(node.rank != right.rank)
+				{
+					return new Node(node.key, node.value, node.rank, node.left, right);
+				}
+				if(node.rank - this.rankOf(node.left) == 1)//promote
+				{
+					numRebalance[0]++;
+					return new Node(node.key, node.value, node.rank + 1, node.left, right);
+				}
+				if(right.rank - this.rankOf(right.left) == 2)//single rotation
+				{
+					numRebalance[0]++;
+					Node z = new Node(node.key, node.value, node.rank - 1, node.left, right.left);
+					return new Node(right.key, right.value, right.rank, z, right.right);
+				}
+				//double rotation
+				numRebalance[0] += 2;
+				Node y = right.left;
+				Node x = new Node(right.key, right.value, right.rank - 1, y.right, right.right);
+				Node z = new Node(node.key, node.value, node.rank - 1, node.left, y.left);
+				return new Node(y.key, y.value, y.rank + 1, z, x);
+			}
+		}
+		
+		/**
+		 * private Node delete(Node node, int k, int[] numRebalance)
+		 *
+		 * Returns a copy of the subtree of node with k deleted and rebalanced,
+		 * or node itself if k is not in it.
+		 */
+		private Node delete(Node node, int k, int[] numRebalance)
+		{
+			if(node == null)
+			{
+				return null;
+			}
+			if(k < node.key)
+			{
+				Node left = this.delete(node.left, k, numRebalance);
+				if(left == node.left)
+				{
+					return node;
+				}
+				return this.rebalanceDelete(node.key, node.value, node.rank, left, node.right, numRebalance);
+			}
+			if(k > node.key)
+			{
+				Node right = this.delete(node.right, k, numRebalance);
+				if(right == node.right)
+				{
+					return node;
+				}
+				return this.rebalanceDelete(node.key, node.value, node.rank, node.left, right, numRebalance);
+			}
+			if(node.left == null)
+			{
+				return node.right;
+			}
+			if(node.right == null)
+			{
+				return node.left;
+			}
+			//two sons - the successor takes the place of node
+			Node successor = node.right;
+			while(successor.left != null)
+			{
+				successor = successor.left;
+			}
+			Node right = this.delete(node.right, successor.key, numRebalance);
+			return this.rebalanceDelete(successor.key, successor.value, node.rank, node.left, right, numRebalance);
+		}
+		
+		/**
+		 * private Node rebalanceDelete(int key, String value, int rank, Node left, Node right, int[] numRebalance)
+		 *
+		 * Builds the node (key, value, rank, left, right) after one of its subtrees lost a node,
+		 * so that the subtree may have become a 3-child, or the node a 2,2 leaf.
+		 * Returns the root of the rebalanced subtree, whose rank may be one lower than rank.
+		 */
+		private Node rebalanceDelete(int key, String value, int rank, Node left, Node right, int[] numRebalance)
+		{
+			if(left == null && right == null)
+			{
+				if(rank != 0)//2,2 leaf - demote
+				{
+					numRebalance[0]++;
+				}
+				return new Node(key, value, 0, null, null);
+			}
+			int leftDiff = rank - this.rankOf(left);
+			int rightDiff = rank - this.rankOf(right);
+			if(leftDiff <= 2 && rightDiff <= 2)
+			{
+				return new Node(key, value, rank, left, right);
+			}
+			if(leftDiff == 2 || rightDiff == 2)//3,2 - demote
+			{
+				numRebalance[0]++;
+				return new Node(key, value, rank - 1, left, right);
+			}
+			if(leftDiff == 3)
+			{
+				Node y = right;
+				int yLeftDiff = y.rank - this.rankOf(y.left);
+				int yRightDiff = y.rank - this.rankOf(y.right);
+				if(yLeftDiff == 2 && yRightDiff == 2)//double demote
+				{
+					numRebalance[0] += 2;
+					Node newY = new Node(y.key, y.value, y.rank - 1, y.left, y.right);
+					return new Node(key, value, rank - 1, left, newY);
+				}
+				if(yRightDiff == 1)//single rotation
+				{
+					numRebalance[0]++;
+					int zRank = (left == null && y.left == null) ? 0 : rank - 1;
+					Node z = new Node(key, value, zRank, left, y.left);
+					return new Node(y.key, y.value, y.rank + 1, z, y.right);
+				}
+				//double rotation
+				numRebalance[0] += 2;
+				Node a = y.left;
+				Node z = new Node(key, value, rank - 2, left, a.left);
+				Node newY = new Node(y.key, y.value, y.rank - 1, a.right, y.right);
+				return new Node(a.key, a.value, rank, z, newY);
+			}
+			else
+			{
+				Node y = left;
+				int yLeftDiff = y.rank - this.rankOf(y.left);
+				int yRightDiff = y.rank - this.rankOf(y.right);
+				if(yLeftDiff == 2 && yRightDiff == 2)//double demote
+				{
+					numRebalance[0] += 2;
+					Node newY = new Node(y.key, y.value, y.rank - 1, y.left, y.right);
+					return new Node(key, value, rank - 1, newY, right);
+				}
+				if(yLeftDiff == 1)//single rotation
+				{
+					numRebalance[0]++;
+					int zRank = (right == null && y.right == null) ? 0 : rank - 1;
+					Node z = new Node(key, value, zRank, y.right, right);
+					return new Node(y.key, y.value, y.rank + 1, y.left, z);
+				}
+				//double rotation
+				numRebalance[0] += 2;
+				Node a = y.right;
+				Node z = new Node(key, value, rank - 2, a.right, right);
+				Node newY = new Node(y.key, y.value, y.rank - 1, y.left, a.left);
+				return new Node(a.key, a.value, rank, newY, z);
+			}
+		}
+	}
+
+	/**
+	 *
+	 * MVCCWAVLTree
+	 *
+	 * A PersistentWAVLTree with multi version reads. Every successful insert and delete advances
+	 * the epoch. A reader pins the current epoch with pin() and reads that version of the tree through
+	 * the returned ReadView for as long as it likes, while writers go on; since nodes are never
+	 * modified, it never sees a half done rotation and never holds up a writer.
+	 * A pinned version is kept in a table by epoch, shared by all readers pinning the same epoch,
+	 * and reclaimed - dropped from the table, which leaves its nodes no other version shares
+	 * to the garbage collector - once the last of them closes its view.
+	 * The retained versions, the readers and how far the oldest pinned epoch lags behind
+	 * are reported by publish, so a scan that is never closed shows up there.
+	 *
+	 */
+	public class MVCCWAVLTree {
+		
+		private final PersistentWAVLTree tree;
+		// the number of successful inserts and deletes so far, guarded by this
+		private long epoch;
+		// the pinned versions by epoch, guarded by this
+		private final TreeMap<Long, Version> versions;
+		// guarded by this
+		private int readers;
+		private long reclaimedVersions;
+		
+		private class Version {
+			private final long epoch;
+			private final PersistentWAVLTree snapshot;
+			private int pins;
+			
+			private Version(long epoch, PersistentWAVLTree snapshot)
+			{
+				this.epoch = epoch;
+				this.snapshot = snapshot;
+				this.pins = 0;
+			}
+		}
+		
+		/**
+		 * public class ReadView
+		 *
+		 * The version of the tree at the epoch pinned by MVCCWAVLTree.pin(), until close() is called.
+		 */
+		public class ReadView implements AutoCloseable {
+			private Version version;
+			
+			private ReadView(Version version)
+			{
+				this.version = version;
+			}
+			
+			/**
+			 * public long getEpoch()
+			 *
+			 * Returns the pinned epoch, the number of changes to the tree this view sees.
+			 */
+			public long getEpoch()
+			{
+				return this.pinned().epoch;
+			}
+			
+			/**
+			 * public PersistentWAVLTree getTree()
+			 *
+			 * Returns the tree as of the pinned epoch. It must not be changed.
+			 */
+			public PersistentWAVLTree getTree()
+			{
+				return this.pinned().snapshot;
+			}
+			
+			/**
+			 * public void close()
+			 *
+			 * Unpins the epoch, letting its version be reclaimed once no reader pins it.
+			 * Closing a view twice has no effect.
+			 */
+			public void close()
+			{
+				if(this.version != null)
+				{
+					unpin(this.version);
+					this.version = null;
+				}
+			}
+			
+			private Version pinned()
+			{
+				if(this.version == null)
+				{
+					throw new IllegalStateException("read view is closed");
+				}
+				return this.version;
+			}
+		}
+		
+		public MVCCWAVLTree()
+		{
+			this.tree = new PersistentWAVLTree();
+			this.epoch = 0;
+			this.versions = new TreeMap<Long, Version>();
+			this.readers = 0;
+			this.reclaimedVersions = 0;
+		}
+		
+		/**
+		 * public int insert(int k, String i)
+		 *
+		 * inserts an item with key k and info i, see WAVLTree.insert, and advances the epoch.
+		 * returns -1 if an item with key k already exists in the tree.
+		 */
+		public synchronized int insert(int k, String i)
+		{
+			int numRebalance = this.tree.insert(k, i);
+			if(numRebalance != -1)
+			{
+				this.epoch++;
+			}
+			return numRebalance;
+		}
+		
+		/**
+		 * public int delete(int k)
+		 *
+		 * deletes the item with key k, see WAVLTree.delete, and advances the epoch.
+		 * returns -1 if an item with key k was not found in the tree.
+		 */
+		public synchronized int delete(int k)
+		{
+			int numRebalance = this.tree.delete(k);
+			if(numRebalance != -1)
+			{
+				this.epoch++;
+			}
+			return numRebalance;
+		}
+		
+		/**
+		 * public String search(int k)
+		 *
+		 * returns the info of an item with key k in the latest version, without pinning it,
+		 * otherwise returns null
+		 */
+		public String search(int k)
+		{
+			return this.tree.search(k);
+		}
+		
+		/**
+		 * public int size()
+		 *
+		 * Returns the number of items in the latest version.
+		 */
+		public int size()
+		{
+			return this.tree.size();
+		}
+		
+		/**
+		 * public ReadView pin()
+		 *
+		 * Pins the current epoch and returns a view of the tree at that epoch, in O(log v)
+		 * for v retained versions. The view must be closed when the reader is done.
+		 */
+		public synchronized ReadView pin()
+		{
+			Version version = this.versions.get(this.epoch);
+			if(version == null)
+			{
+				version = new Version(this.epoch, this.tree.snapshot());
+				this.versions.put(this.epoch, version);
+			}
+			version.pins++;
+			this.readers++;
+			return new ReadView(version);
+		}
+		
+		private synchronized void unpin(Version version)
+		{
+			version.pins--;
+			this.readers--;
+			if(version.pins == 0)
+			{
+				this.versions.remove(version.epoch);
+				this.reclaimedVersions++;
+			}
+		}
+		
+		/**
+		 * public long getEpoch()
+		 *
+		 * Returns the current epoch, the number of successful inserts and deletes so far.
+		 */
+		public synchronized long getEpoch()
+		{
+			return this.epoch;
+		}
+		
+		/**
+		 * public int getRetainedVersions()
+		 *
+		 * Returns the number of versions pinned by open read views.
+		 */
+		public synchronized int getRetainedVersions()
+		{
+			return this.versions.size();
+		}
+		
+		/**
+		 * public long getOldestPinnedEpoch()
+		 *
+		 * Returns the oldest epoch pinned by an open read view, or -1 if there is none.
+		 */
+		public synchronized long getOldestPinnedEpoch()
+		{
+			return this.versions.isEmpty() ? -1 : this.versions.firstKey();
+		}
+		
+		/**
+		 * public void publish(WAVLMetricsSink sink)
+		 *
+		 * Reports the version counters to sink under names like "mvcc.versions.retained".
+		 * "mvcc.epoch.lag" is the number of changes the oldest open view does not see.
+		 */
+		public void publish(WAVLMetricsSink sink)
+		{
+			long epoch;
+			long oldest;
+			int retained;
+			int readers;
+			long reclaimed;
+			synchronized(this)
+			{
+				epoch = this.epoch;
+				oldest = this.versions.isEmpty() ? epoch : this.versions.firstKey();
+				retained = this.versions.size();
+				readers = this.readers;
+				reclaimed = this.reclaimedVersions;
+			}
+			sink.report("mvcc.epoch", epoch);
+			sink.report("mvcc.epoch.lag", epoch - oldest);
+			sink.report("mvcc.readers", readers);
+			sink.report("mvcc.versions.retained", retained);
+			sink.report("mvcc.versions.reclaimed", reclaimed);
+		}
+	}
+
+	/**
+	 *
+	 * WAVLTreeFormat
+	 *
+	 * Writes WAVL trees to and reads them from NIO channels in a compact binary format,
+	 * streaming through one fixed buffer so the encoded tree is never held in memory.
+	 *
+	 * Format (VERSION 1):
+	 * magic "WAVL", version byte, flags byte, number of items as a varint, then
+	 * keys: the smallest key zigzag encoded, every other key as its difference from the previous one,
+	 * values: the UTF-8 length of every value plus 1 (0 for null) followed by its bytes,
+	 * shape, only if flags has FLAG_SHAPE: the rank of every node, one byte each,
+	 * each section in key order. Varints hold 7 bits per byte, low bits first.
+	 * A tree read without a shape is rebuilt balanced by loadSorted, with a shape it gets back
+	 * the exact ranks it was written with, by loadRanked. Both writing and reading take O(n).
+	 *
+	 */
+	public class WAVLTreeFormat {
+		
+		public static final int MAGIC = 0x5741564C;
+		public static final byte VERSION = 1;
+		public static final byte FLAG_SHAPE = 1;
+		private static final int BUFFER_SIZE = 1 << 16;
+		
+		/**
+		 * public void write(WAVLTree tree, WritableByteChannel channel, boolean withShape)
+		 *
+		 * Writes the items of tree to channel, and their ranks if withShape is set.
+		 * Does not close the channel.
+		 */
+		public void write(WAVLTree tree, WritableByteChannel channel, boolean withShape) throws IOException
+		{
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			buffer.putInt(MAGIC);
+			buffer.put(VERSION);
+			buffer.put(withShape ? FLAG_SHAPE : 0);
+			this.putVarint(buffer, tree.size());
+			WAVLTree.WAVLNode first = tree.getRoot();
+			if(first != null)
+			{
+				while(first.getLeft().isInnerNode())
+				{
+					first = first.getLeft();
+				}
+			}
+			long previous = 0;
+			for(WAVLTree.WAVLNode node = first; node != null; node = node.successor())
+			{
+				this.reserve(buffer, channel, 10);
+				if(node == first)
+				{
+					this.putVarint(buffer, ((node.getKey() << 1) ^ (node.getKey() >> 31)) & 0xFFFFFFFFL);
+				}
+				else
+				{
+					this.putVarint(buffer, node.getKey() - previous);
+				}
+				previous = node.getKey();
+			}
+			for(WAVLTree.WAVLNode node = first; node != null; node = node.successor())
+			{
+				this.reserve(buffer, channel, 10);
+				if(node.getValue() == null)
+				{
+					this.putVarint(buffer, 0);
+					continue;
+				}
+				byte[] bytes = node.getValue().getBytes(StandardCharsets.UTF_8);
+				this.putVarint(buffer, bytes.length + 1L);
+				for(int offset = 0; offset < bytes.length; )
+				{
+					this.reserve(buffer, channel, 1);
+					int length = Math.min(buffer.remaining(), bytes.length - offset);
+					buffer.put(bytes, offset, length);
+					offset += length;
+				}
+			}
+			if(withShape)
+			{
+				for(WAVLTree.WAVLNode node = first; node != null; node = node.successor())
+				{
+					this.reserve(buffer, channel, 1);
+					buffer.put((byte) node.getRank());
+				}
+			}
+			this.flush(buffer, channel);
+		}
+		
+		/**
+		 * public WAVLTree read(ReadableByteChannel channel)
+		 *
+		 * Reads a tree written by write from channel and returns it.
+		 * Throws IOException if the stream is truncated or is not a valid tree stream.
+		 */
+		public WAVLTree read(ReadableByteChannel channel) throws IOException
+		{
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			buffer.flip();
+			this.fill(buffer, channel, 6);
+			if(buffer.getInt() != MAGIC)
+			{
+				throw new IOException("not a WAVL tree stream");
+			}
+			byte version = buffer.get();
+			if(version != VERSION)
+			{
+				throw new IOException("unsupported WAVL tree stream version " + version);
+			}
+			byte flags = buffer.get();
+			long count = this.getVarint(buffer, channel);
+			if(count < 0 || count > Integer.MAX_VALUE - 8)
+			{
+				throw new IOException("WAVL tree stream has an invalid item count: " + count);
+			}
+			// the arrays grow as keys arrive, so a corrupt count runs into the end of the stream, not out of memory
+			int[] keys = new int[(int) Math.min(count, BUFFER_SIZE)];
+			long previous = 0;
+			for(int j = 0; j < count; j++)
+			{
+				if(j == keys.length)
+				{
+					keys = Arrays.copyOf(keys, (int) Math.min(count, 2L * keys.length));
+				}
+				long key;
+				if(j == 0)
+				{
+					long zigzag = this.getVarint(buffer, channel);
+					key = (zigzag >>> 1) ^ -(zigzag & 1);
+				}
+				else
+				{
+					long delta = this.getVarint(buffer, channel);
+					if(delta < 1 || delta > 0xFFFFFFFFL)
+					{
+						throw new IOException("key " + j + " does not follow key " + (j - 1));
+					}
+					key = previous + delta;
+				}
+				if(key < Integer.MIN_VALUE || key > Integer.MAX_VALUE)
+				{
+					throw new IOException("key " + j + " is out of range");
+				}
+				keys[j] = (int) key;
+				previous = key;
+			}
+			String[] values = new String[keys.length];
+			for(int j = 0; j < values.length; j++)
+			{
+				long length = this.getVarint(buffer, channel) - 1;
+				if(length == -1)
+				{
+					continue;
+				}
+				if(length < 0 || length > Integer.MAX_VALUE - 8)
+				{
+					throw new IOException("value " + j + " has an invalid length: " + length);
+				}
+				// grown like the keys, the length is not trusted either
+				byte[] bytes = new byte[(int) Math.min(length, BUFFER_SIZE)];
+				for(int offset = 0; offset < length; )
+				{
+					if(offset == bytes.length)
+					{
+						bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * bytes.length));
+					}
+					this.fill(buffer, channel, 1);
+					int chunk = Math.min(buffer.remaining(), bytes.length - offset);
+					buffer.get(bytes, offset, chunk);
+					offset += chunk;
+				}
+				values[j] = new String(bytes, StandardCharsets.UTF_8);
+			}
+			WAVLTree tree = new WAVLTree();
+			if((flags & FLAG_SHAPE) == 0)
+			{
+				tree.loadSorted(keys, values, false);
+				return tree;
+			}
+			byte[] ranks = new byte[keys.length];
+			for(int offset = 0; offset < ranks.length; )
+			{
+				this.fill(buffer, channel, 1);
+				int chunk = Math.min(buffer.remaining(), ranks.length - offset);
+				buffer.get(ranks, offset, chunk);
+				offset += chunk;
+			}
+			try
+			{
+				tree.loadRanked(keys, values, ranks);
+			}
+			catch(IllegalArgumentException e)
+			{
+				throw new IOException("corrupt shape section: " + e.getMessage(), e);
+			}
+			return tree;
+		}
+		
+		// makes room for n more bytes in buffer, writing it out if needed
+		private void reserve(ByteBuffer buffer, WritableByteChannel channel, int n) throws IOException
+		{
+			if(buffer.remaining() < n)
+			{
+				this.flush(buffer, channel);
+			}
+		}
+		
+		private void flush(ByteBuffer buffer, WritableByteChannel channel) throws IOException
+		{
+			buffer.flip();
+			while(buffer.hasRemaining())
+			{
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+		
+		// makes sure buffer (in read mode) has at least n unread bytes, n <= BUFFER_SIZE
+		private void fill(ByteBuffer buffer, ReadableByteChannel channel, int n) throws IOException
+		{
+			if(buffer.remaining() >= n)
+			{
+				return;
+			}
+			buffer.compact();
+			while(buffer.position() < n)
+			{
+				if(channel.read(buffer) < 0)
+				{
+					throw new EOFException("truncated WAVL tree stream");
+				}
+			}
+			buffer.flip();
+		}
+		
+		private void putVarint(ByteBuffer buffer, long value)
+		{
+			while((value & ~0x7FL) != 0)
+			{
+				buffer.put((byte) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			buffer.put((byte) value);
+		}
+		
+		private long getVarint(ByteBuffer buffer, ReadableByteChannel channel) throws IOException
+		{
+			long value = 0;
+			for(int shift = 0; shift < 64; shift += 7)
+			{
+				this.fill(buffer, channel, 1);
+				byte b = buffer.get();
+				value |= (long) (b & 0x7F) << shift;
+				if(b >= 0)
+				{
+					return value;
+				}
+			}
+			throw new IOException("malformed varint in WAVL tree stream");
+		}
+	}
+
+	/**
+	 *
+	 * WALSyncPolicy
+	 *
+	 * When DurableWAVLTree forces its write-ahead log to the storage device.
+	 *
+	 */
+	public enum WALSyncPolicy
+	{
+		// insert and delete return only after their record was forced; concurrent writers share one force
+		ALWAYS,
+		// records are written at once and forced at most once per DurableWAVLTree.SYNC_INTERVAL_NANOS,
+		// by a later writer or, when the tree goes idle, by a background thread within about twice that
+		INTERVAL,
+		// records are written at once and forced only by sync, checkpoint and close
+		NEVER
+	}
+
+	/**
+	 *
+	 * DurableWAVLTree
+	 *
+	 * A thread safe WAVL Tree whose updates survive crashes. The tree lives in memory,
+	 * every successful insert and delete is appended to a write-ahead log in a directory,
+	 * and checkpoint() writes the whole tree there (in the WAVLTreeFormat, with its shape)
+	 * and empties the log. Opening the directory again loads the last checkpoint and replays the log.
+	 *
+	 * A log record is the payload length, the CRC32 of the payload, and the payload:
+	 * the operation byte, the key, and the UTF-8 length of the value (-1 for null) followed by its bytes.
+	 * Replay stops at the first torn or corrupt record and cuts the log there.
+	 * Replaying records already in the checkpoint is harmless, since only successful operations
+	 * are logged, so a crash between writing a checkpoint and emptying the log loses nothing.
+	 *
+	 * Group commit: writers append their records to a shared buffer under the tree's lock,
+	 * then one of them writes the whole buffer and forces it while the others queue up
+	 * behind it, finding their records already written when they get their turn.
+	 * An update is visible to other threads once applied, and durable once insert or delete returns
+	 * (under WALSyncPolicy.ALWAYS).
+	 *
+	 * If writing or forcing the log fails, part of a batch may be in it, so nothing is appended after it:
+	 * the error is kept, and every later insert, delete, sync and checkpoint throws it.
+	 * The updates that ran into it are applied in memory but may not be in the log.
+	 *
+	 */
+	public class DurableWAVLTree {
+		
+		private static final String CHECKPOINT_FILE = "checkpoint";
+		private static final String LOG_FILE = "wal";
+		private static final byte INSERT = 1;
+		private static final byte DELETE = 2;
+		private static final int RECORD_HEADER_SIZE = 8;
+		private static final int RECORD_MIN_PAYLOAD = 9;
+		public static final long SYNC_INTERVAL_NANOS = 10000000L;
+		
+		private final Path directory;
+		private final WALSyncPolicy policy;
+		private final long checkpointBytes;
+		private final FileChannel log;
+		private final WAVLTree tree;
+		
+		// guarded by this, together with the tree: records not yet written and the sequence number of the last one
+		private ByteBuffer pending;
+		private long appended;
+		
+		// taken before this when both are needed
+		private final Object flushLock = new Object();
+		// guarded by flushLock
+		private ByteBuffer spare;
+		private long flushed;
+		private long logBytes;
+		private long lastSyncNanos;
+		private long syncCount;
+		// written records not forced yet, guarded by flushLock
+		private boolean unforced;
+		// the error of the first failed write or force, guarded by flushLock
+		private IOException failure;
+		// forces idle logs under WALSyncPolicy.INTERVAL, null under the other policies
+		private final Thread flusher;
+		private volatile boolean closed;
+		
+		/**
+		 * public DurableWAVLTree(String directory, WALSyncPolicy policy, long checkpointBytes)
+		 *
+		 * Opens the tree stored in directory, creating it if needed, and recovers it from
+		 * the last checkpoint and the log. A checkpoint is taken whenever the log grows past
+		 * checkpointBytes, 0 means only when checkpoint() is called.
+		 */
+		public DurableWAVLTree(String directory, WALSyncPolicy policy, long checkpointBytes) throws IOException
+		{
+			this.directory = Paths.get(directory);
+			this.policy = policy;
+			this.checkpointBytes = checkpointBytes;
+			Files.createDirectories(this.directory);
+			Path checkpoint = this.directory.resolve(CHECKPOINT_FILE);
+			if(Files.exists(checkpoint))
+			{
+				try(FileChannel in = FileChannel.open(checkpoint, StandardOpenOption.READ))
+				{
+					this.tree = readTree(in);
+				}
+			}
+			else
+			{
+				this.tree = new WAVLTree();
+			}
+			this.log = FileChannel.open(this.directory.resolve(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			try
+			{
+				this.logBytes = this.replay();
+				this.log.truncate(this.logBytes);
+				this.log.position(this.logBytes);
+			}
+			catch(IOException | RuntimeException e)
+			{
+				try
+				{
+					this.log.close();
+				}
+				catch(IOException closeError)
+				{
+					e.addSuppressed(closeError);
+				}
+				throw e;
+			}
+			this.pending = ByteBuffer.allocate(1 << 12);
+			this.spare = ByteBuffer.allocate(1 << 12);
+			this.lastSyncNanos = System.nanoTime();
+			this.closed = false;
+			if(policy == WALSyncPolicy.INTERVAL)
+			{
+				this.flusher = new Thread(new Runnable()
+				{
+					public void run()
+					{
+						runFlusher();
+					}
+				}, "DurableWAVLTree flusher " + this.directory);
+				this.flusher.setDaemon(true);
+				this.flusher.start();
+			}
+			else
+			{
+				this.flusher = null;
+			}
+		}
+		
+		// wakes up every SYNC_INTERVAL_NANOS and forces what no writer forced in the last interval
+		private void runFlusher()
+		{
+			while(!this.closed)
+			{
+				try
+				{
+					Thread.sleep(SYNC_INTERVAL_NANOS / 1000000L, (int) (SYNC_INTERVAL_NANOS % 1000000L));
+				}
+				catch(InterruptedException e)
+				{
+					return;
+				}
+				synchronized(this.flushLock)
+				{
+					if(this.closed || System.nanoTime() - this.lastSyncNanos < SYNC_INTERVAL_NANOS)
+					{
+						continue;
+					}
+					boolean pending;
+					synchronized(this)
+					{
+						pending = this.flushed < this.appended;
+					}
+					if(this.unforced || pending)
+					{
+						try
+						{
+							this.flush(true);
+						}
+						catch(UncheckedIOException e)
+						{
+							// the error is kept, the next insert, delete, sync or checkpoint throws it
+							return;
+						}
+					}
+				}
+			}
+		}
+		
+		// applies the intact prefix of the log to the tree and returns its length in bytes
+		private long replay() throws IOException
+		{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(this.log), 1 << 16));
+			CRC32 crc = new CRC32();
+			long end = 0;
+			long size = this.log.size();
+			while(size - end >= RECORD_HEADER_SIZE)
+			{
+				int length = in.readInt();
+				int checksum = in.readInt();
+				if(length < RECORD_MIN_PAYLOAD || length > size - end - RECORD_HEADER_SIZE)
+				{
+					break;
+				}
+				byte[] payload = new byte[length];
+				in.readFully(payload);
+				crc.reset();
+				crc.update(payload, 0, length);
+				if((int) crc.getValue() != checksum)
+				{
+					break;
+				}
+				ByteBuffer record = ByteBuffer.wrap(payload);
+				byte operation = record.get();
+				int key = record.getInt();
+				int valueLength = record.getInt();
+				if((operation != INSERT && operation != DELETE) || valueLength != ((valueLength < 0) ? -1 : length - RECORD_MIN_PAYLOAD) || (valueLength < 0 && length != RECORD_MIN_PAYLOAD))
+				{
+					break;
+				}
+				if(operation == INSERT)
+				{
+					String value = (valueLength < 0) ? null : new String(payload, RECORD_MIN_PAYLOAD, valueLength, StandardCharsets.UTF_8);
+					this.tree.insert(key, value);
+				}
+				else
+				{
+					this.tree.delete(key);
+				}
+				end += RECORD_HEADER_SIZE + length;
+			}
+			return end;
+		}
+		
+		/**
+		 * public synchronized boolean empty()
+		 *
+		 * returns true if and only if the tree is empty
+		 *
+		 */
+		public synchronized boolean empty()
+		{
+			return this.tree.empty();
+		}
+		
+		/**
+		 * public synchronized int size()
+		 *
+		 * Returns the number of items in the tree.
+		 */
+		public synchronized int size()
+		{
+			return this.tree.size();
+		}
+		
+		/**
+		 * public synchronized String search(int k)
+		 *
+		 * returns the info of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 */
+		public synchronized String search(int k)
+		{
+			return this.tree.search(k);
+		}
+		
+		/**
+		 * public synchronized String min()
+		 *
+		 * Returns the info of the item with the smallest key in the tree,
+		 * or null if the tree is empty
+		 */
+		public synchronized String min()
+		{
+			return this.tree.min();
+		}
+		
+		/**
+		 * public synchronized String max()
+		 *
+		 * Returns the info of the item with the largest key in the tree,
+		 * or null if the tree is empty
+		 */
+		public synchronized String max()
+		{
+			return this.tree.max();
+		}
+		
+		/**
+		 * public int insert(int k, String i)
+		 *
+		 * inserts an item with key k and info i to the WAVL tree, see WAVLTree.insert,
+		 * and logs it according to the sync policy.
+		 */
+		public int insert(int k, String i)
+		{
+			long sequence;
+			int numRebalance;
+			synchronized(this)
+			{
+				numRebalance = this.tree.insert(k, i);
+				if(numRebalance == -1)
+				{
+					return -1;
+				}
+				sequence = this.append(INSERT, k, i);
+			}
+			this.commit(sequence);
+			return numRebalance;
+		}
+		
+		/**
+		 * public int delete(int k)
+		 *
+		 * deletes an item with key k from the WAVL tree, see WAVLTree.delete,
+		 * and logs it according to the sync policy.
+		 */
+		public int delete(int k)
+		{
+			long sequence;
+			int numRebalance;
+			synchronized(this)
+			{
+				numRebalance = this.tree.delete(k);
+				if(numRebalance == -1)
+				{
+					return -1;
+				}
+				sequence = this.append(DELETE, k, null);
+			}
+			this.commit(sequence);
+			return numRebalance;
+		}
+		
+		/**
+		 * public void sync()
+		 *
+		 * Writes and forces all logged updates, whatever the sync policy.
+		 */
+		public void sync()
+		{
+			synchronized(this.flushLock)
+			{
+				this.flush(true);
+			}
+		}
+		
+		/**
+		 * public void checkpoint()
+		 *
+		 * Writes the tree to the checkpoint file, replacing the previous one atomically,
+		 * and empties the log. Updates wait until it is done, which takes O(n).
+		 */
+		public void checkpoint()
+		{
+			synchronized(this.flushLock)
+			{
+				this.checkFailure();
+				synchronized(this)
+				{
+					try
+					{
+						Path temporary = this.directory.resolve(CHECKPOINT_FILE + ".tmp");
+						try(FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+						{
+							this.tree.writeTo(out, true);
+							out.force(true);
+						}
+						Files.move(temporary, this.directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE);
+						this.forceDirectory();
+						this.log.truncate(0);
+						this.log.force(true);
+						// the checkpoint holds every applied update, pending ones included
+						this.pending.clear();
+						this.flushed = this.appended;
+						this.logBytes = 0;
+						this.unforced = false;
+						this.syncCount++;
+						this.lastSyncNanos = System.nanoTime();
+					}
+					catch(IOException e)
+					{
+						throw new UncheckedIOException(e);
+					}
+				}
+			}
+		}
+		
+		/**
+		 * public void close()
+		 *
+		 * Writes and forces all logged updates and closes the log.
+		 * The tree can not be used after it was closed.
+		 */
+		public void close() throws IOException
+		{
+			this.closed = true;
+			if(this.flusher != null)
+			{
+				this.flusher.interrupt();
+				try
+				{
+					this.flusher.join();
+				}
+				catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+			synchronized(this.flushLock)
+			{
+				try
+				{
+					this.flush(true);
+				}
+				finally
+				{
+					this.log.close();
+				}
+			}
+		}
+		
+		/**
+		 * public long getSyncCount()
+		 *
+		 * Returns the number of times the log was forced, checkpoints included.
+		 */
+		public long getSyncCount()
+		{
+			synchronized(this.flushLock)
+			{
+				return this.syncCount;
+			}
+		}
+		
+		// appends a record to pending and returns its sequence number, called under this
+		private long append(byte operation, int k, String i)
+		{
+			byte[] bytes = (i == null) ? null : i.getBytes(StandardCharsets.UTF_8);
+			int length = RECORD_MIN_PAYLOAD + ((bytes == null) ? 0 : bytes.length);
+			if(this.pending.remaining() < RECORD_HEADER_SIZE + length)
+			{
+				int capacity = this.pending.capacity();
+				while(capacity - this.pending.position() < RECORD_HEADER_SIZE + length)
+				{
+					capacity *= 2;
+				}
+				ByteBuffer grown = ByteBuffer.allocate(capacity);
+				this.pending.flip();
+				grown.put(this.pending);
+				this.pending = grown;
+			}
+			int start = this.pending.position();
+			this.pending.putInt(length);
+			this.pending.putInt(0);
+			this.pending.put(operation);
+			this.pending.putInt(k);
+			this.pending.putInt((bytes == null) ? -1 : bytes.length);
+			if(bytes != null)
+			{
+				this.pending.put(bytes);
+			}
+			CRC32 crc = new CRC32();
+			crc.update(this.pending.array(), start + RECORD_HEADER_SIZE, length);
+			this.pending.putInt(start + 4, (int) crc.getValue());
+			return ++this.appended;
+		}
+		
+		// makes the record with the given sequence number as durable as the policy asks
+		private void commit(long sequence)
+		{
+			boolean full;
+			synchronized(this.flushLock)
+			{
+				this.checkFailure();
+				if(this.flushed < sequence)
+				{
+					boolean force = this.policy == WALSyncPolicy.ALWAYS
+							|| (this.policy == WALSyncPolicy.INTERVAL && System.nanoTime() - this.lastSyncNanos >= SYNC_INTERVAL_NANOS);
+					this.flush(force);
+				}
+				full = this.checkpointBytes > 0 && this.logBytes >= this.checkpointBytes;
+			}
+			if(full)
+			{
+				this.checkpoint();
+			}
+		}
+		
+		// writes all pending records to the log and forces it if asked, called under flushLock
+		private void flush(boolean force)
+		{
+			this.checkFailure();
+			ByteBuffer batch;
+			long last;
+			synchronized(this)
+			{
+				batch = this.pending;
+				last = this.appended;
+				this.pending = this.spare;
+			}
+			try
+			{
+				batch.flip();
+				int length = batch.remaining();
+				while(batch.hasRemaining())
+				{
+					this.log.write(batch);
+				}
+				if(force)
+				{
+					this.log.force(false);
+					this.unforced = false;
+					this.syncCount++;
+					this.lastSyncNanos = System.nanoTime();
+				}
+				else if(length > 0)
+				{
+					this.unforced = true;
+				}
+				this.logBytes += length;
+				this.flushed = last;
+			}
+			catch(IOException e)
+			{
+				this.failure = e;
+				throw new UncheckedIOException(e);
+			}
+			finally
+			{
+				batch.clear();
+				this.spare = batch;
+			}
+		}
+		
+		// throws the error of an earlier failed write or force, called under flushLock
+		private void checkFailure()
+		{
+			if(this.failure != null)
+			{
+				throw new UncheckedIOException("the log failed earlier, updates are no longer logged", this.failure);
+			}
+		}
+		
+		// makes the rename of the checkpoint durable, where directories can be forced
+		private void forceDirectory() throws IOException
+		{
+			try(FileChannel directory = FileChannel.open(this.directory, StandardOpenOption.READ))
+			{
+				directory.force(true);
+			}
+			catch(IOException e)
+			{
+				// Windows can not open a directory as a channel, and renames there are durable anyway
+				if(!System.getProperty("os.name").startsWith("Windows"))
+				{
+					throw e;
+				}
+			}
+		}
+	}
+
+	/**
+	 *
+	 * ShardedWAVLTree
+	 *
+	 * A thread safe map from int keys to infos, partitioned by key range into independent WAVLTrees
+	 * (shards), each behind its own lock, so writers of different ranges never contend.
+	 * Keys are routed by binary search in an array of shard lower bounds, which is replaced,
+	 * never modified, when bounds move; a writer that lands on a shard whose range moved
+	 * meanwhile just routes again.
+	 *
+	 * When a shard grows past twice the size of a neighbour (plus REBALANCE_SLACK) the
+	 * bound between them is moved to even them out, in O(log n): the larger tree is split
+	 * at the new bound and the split off part is joined to the smaller one.
+	 * size() adds up per shard sizes without locking. select, min, max and the range
+	 * queries lock every shard, in index order, and so see one consistent state.
+	 *
+	 */
+	public class ShardedWAVLTree {
+		
+		private static final int REBALANCE_SLACK = 64;
+		
+		private final Shard[] shards;
+		// lows[j] is the smallest key of shard j; replaced, never modified
+		private volatile long[] lows;
+		
+		private class Shard {
+			private final int index;
+			private final StampedLock lock = new StampedLock();
+			// guarded by lock: the tree and the key range [low, high) it covers
+			private WAVLTree tree = new WAVLTree();
+			private long low;
+			private long high;
+			// the size of tree, readable without the lock
+			private volatile int size;
+			
+			private Shard(int index, long low, long high)
+			{
+				this.index = index;
+				this.low = low;
+				this.high = high;
+			}
+			
+			private boolean owns(int k)
+			{
+				return this.low <= k && k < this.high;
+			}
+		}
+		
+		/**
+		 * public ShardedWAVLTree(int shardCount)
+		 *
+		 * Creates an empty tree of shardCount shards, splitting the int range evenly between them.
+		 * The bounds adapt to the actual keys as the shards fill up.
+		 */
+		public ShardedWAVLTree(int shardCount)
+		{
+			if(shardCount < 1)
+			{
+				throw new IllegalArgumentException("a sharded tree needs at least one shard, got " + shardCount);
+			}
+			this.shards = new Shard[shardCount];
+			long[] lows = new long[shardCount];
+			long width = (1L << 32) / shardCount;
+			for(int j = 0; j < shardCount; j++)
+			{
+				lows[j] = Integer.MIN_VALUE + j * width;
+			}
+			for(int j = 0; j < shardCount; j++)
+			{
+				long high = (j + 1 < shardCount) ? lows[j + 1] : Integer.MAX_VALUE + 1L;
+				this.shards[j] = new Shard(j, lows[j], high);
+			}
+			this.lows = lows;
+		}
+		
+		/**
+		 * public int shardCount()
+		 *
+		 * Returns the number of shards.
+		 */
+		public int shardCount()
+		{
+			return this.shards.length;
+		}
+		
+		/**
+		 * public int[] shardSizes()
+		 *
+		 * Returns the number of items in every shard, each read without locking.
+		 */
+		public int[] shardSizes()
+		{
+			int[] sizes = new int[this.shards.length];
+			for(int j = 0; j < sizes.length; j++)
+			{
+				sizes[j] = this.shards[j].size;
+			}
+			return sizes;
+		}
+		
+		/**
+		 * public boolean empty()
+		 *
+		 * returns true if and only if the tree is empty
+		 *
+		 */
+		public boolean empty()
+		{
+			return this.size() == 0;
+		}
+		
+		/**
+		 * public int size()
+		 *
+		 * Returns the number of items in the tree. Shards are read one by one without locking,
+		 * so with concurrent updates the result is only approximate.
+		 */
+		public int size()
+		{
+			int size = 0;
+			for(int j = 0; j < this.shards.length; j++)
+			{
+				size += this.shards[j].size;
+			}
+			return size;
+		}
+		
+		/**
+		 * public String search(int k)
+		 *
+		 * returns the info of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 */
+		public String search(int k)
+		{
+			while(true)
+			{
+				Shard shard = this.route(k);
+				long stamp = shard.lock.readLock();
+				try
+				{
+					if(shard.owns(k))
+					{
+						return shard.tree.search(k);
+					}
+				}
+				finally
+				{
+					shard.lock.unlockRead(stamp);
+				}
+			}
+		}
+		
+		/**
+		 * public int insert(int k, String i)
+		 *
+		 * inserts an item with key k and info i to the tree, see WAVLTree.insert.
+		 * May move the bounds of k's shard afterwards if it outgrew a neighbour.
+		 */
+		public int insert(int k, String i)
+		{
+			while(true)
+			{
+				Shard shard = this.route(k);
+				int numRebalance;
+				long stamp = shard.lock.writeLock();
+				try
+				{
+					if(!shard.owns(k))
+					{
+						continue;
+					}
+					numRebalance = shard.tree.insert(k, i);
+					shard.size = shard.tree.size();
+				}
+				finally
+				{
+					shard.lock.unlockWrite(stamp);
+				}
+				if(numRebalance != -1)
+				{
+					this.balanceNeighbours(shard.index);
+				}
+				return numRebalance;
+			}
+		}
+		
+		/**
+		 * public int delete(int k)
+		 *
+		 * deletes an item with key k from the tree, see WAVLTree.delete.
+		 */
+		public int delete(int k)
+		{
+			while(true)
+			{
+				Shard shard = this.route(k);
+				long stamp = shard.lock.writeLock();
+				try
+				{
+					if(!shard.owns(k))
+					{
+						continue;
+					}
+					int numRebalance = shard.tree.delete(k);
+					shard.size = shard.tree.size();
+					return numRebalance;
+				}
+				finally
+				{
+					shard.lock.unlockWrite(stamp);
+				}
+			}
+		}
+		
+		/**
+		 * public String min()
+		 *
+		 * Returns the info of the item with the smallest key in the tree,
+		 * or null if the tree is empty
+		 */
+		public String min()
+		{
+			long[] stamps = this.lockAll();
+			try
+			{
+				for(int j = 0; j < this.shards.length; j++)
+				{
+					if(!this.shards[j].tree.empty())
+					{
+						return this.shards[j].tree.min();
+					}
+				}
+				return null;
+			}
+			finally
+			{
+				this.unlockAll(stamps);
+			}
+		}
+		
+		/**
+		 * public String max()
+		 *
+		 * Returns the info of the item with the largest key in the tree,
+		 * or null if the tree is empty
+		 */
+		public String max()
+		{
+			long[] stamps = this.lockAll();
+			try
+			{
+				for(int j = this.shards.length - 1; j >= 0; j--)
+				{
+					if(!this.shards[j].tree.empty())
+					{
+						return this.shards[j].tree.max();
+					}
+				}
+				return null;
+			}
+			finally
+			{
+				this.unlockAll(stamps);
+			}
+		}
+		
+		/**
+		 * public String select(int i)
+		 *
+		 * Returns the info of the i'th smallest key (1-based), or "-1" if i is out of range.
+		 * Skips whole shards by their sizes, then selects inside one shard in O(log n).
+		 */
+		public String select(int i)
+		{
+			long[] stamps = this.lockAll();
+			try
+			{
+				for(int j = 0; j < this.shards.length && i >= 1; j++)
+				{
+					int size = this.shards[j].tree.size();
+					if(i <= size)
+					{
+						return this.shards[j].tree.select(i);
+					}
+					i -= size;
+				}
+				return "-1";
+			}
+			finally
+			{
+				this.unlockAll(stamps);
+			}
+		}
+		
+		/**
+		 * public int rangeCount(int lo, int hi)
+		 *
+		 * Returns the number of keys k in the tree with lo <= k < hi, in O(log n) per shard in range.
+		 */
+		public int rangeCount(int lo, int hi)
+		{
+			long[] stamps = this.lockAll();
+			try
+			{
+				int count = 0;
+				for(int j = 0; j < this.shards.length; j++)
+				{
+					Shard shard = this.shards[j];
+					if(shard.low < hi && lo < shard.high)
+					{
+						count += shard.tree.rangeCount(lo, hi);
+					}
+				}
+				return count;
+			}
+			finally
+			{
+				this.unlockAll(stamps);
+			}
+		}
+		
+		/**
+		 * public int[] keysInRange(int lo, int hi)
+		 *
+		 * Returns the sorted keys k in the tree with lo <= k < hi, all taken at one moment.
+		 */
+		public int[] keysInRange(int lo, int hi)
+		{
+			long[] stamps = this.lockAll();
+			try
+			{
+				int count = 0;
+				for(int j = 0; j < this.shards.length; j++)
+				{
+					count += this.shards[j].tree.rangeCount(lo, hi);
+				}
+				int[] keys = new int[count];
+				int index = 0;
+				for(int j = 0; j < this.shards.length && index < count; j++)
+				{
+					Shard shard = this.shards[j];
+					if(shard.high <= lo || shard.tree.empty())
+					{
+						continue;
+					}
+					WAVLTree.Cursor cursor = shard.tree.cursorFrom(lo, false);
+					while(cursor.hasNext())
+					{
+						int key = cursor.next().getKey();
+						if(key >= hi)
+						{
+							break;
+						}
+						keys[index++] = key;
+					}
+				}
+				return keys;
+			}
+			finally
+			{
+				this.unlockAll(stamps);
+			}
+		}
+		
+		/**
+		 * public void rebalance()
+		 *
+		 * Moves shard bounds until no shard holds more than twice as many items as a neighbour
+		 * (plus REBALANCE_SLACK). insert does this for the shard it touched, this evens out all of them.
+		 */
+		public void rebalance()
+		{
+			boolean moved = true;
+			for(int pass = 0; moved && pass < 2 * this.shards.length; pass++)
+			{
+				moved = false;
+				for(int j = 0; j + 1 < this.shards.length; j++)
+				{
+					moved |= this.balancePair(j);
+				}
+			}
+		}
+		
+		// binary search for the shard whose range held k when lows was last replaced
+		private Shard route(int k)
+		{
+			long[] lows = this.lows;
+			int from = 0;
+			int to = lows.length - 1;
+			while(from < to)
+			{
+				int middle = (from + to + 1) >>> 1;
+				if(lows[middle] <= k)
+				{
+					from = middle;
+				}
+				else
+				{
+					to = middle - 1;
+				}
+			}
+			return this.shards[from];
+		}
+		
+		private long[] lockAll()
+		{
+			long[] stamps = new long[this.shards.length];
+			for(int j = 0; j < this.shards.length; j++)
+			{
+				stamps[j] = this.shards[j].lock.readLock();
+			}
+			return stamps;
+		}
+		
+		private void unlockAll(long[] stamps)
+		{
+			for(int j = stamps.length - 1; j >= 0; j--)
+			{
+				this.shards[j].lock.unlockRead(stamps[j]);
+			}
+		}
+		
+		private boolean unbalanced(int size, int otherSize)
+		{
+			return size > 2 * otherSize + REBALANCE_SLACK;
+		}
+		
+		// evens out shard j with its neighbours if their sizes, read without locking, ask for it
+		private void balanceNeighbours(int j)
+		{
+			int size = this.shards[j].size;
+			if(j > 0 && this.unbalanced(size, this.shards[j - 1].size))
+			{
+				this.balancePair(j - 1);
+			}
+			if(j + 1 < this.shards.length && this.unbalanced(size, this.shards[j + 1].size))
+			{
+				this.balancePair(j);
+			}
+		}
+		
+		/**
+		 * private boolean balancePair(int j)
+		 *
+		 * Moves the bound between shards j and j+1 so that they hold about the same number of items,
+		 * if one of them is unbalanced against the other. Returns true if the bound moved.
+		 */
+		private boolean balancePair(int j)
+		{
+			Shard left = this.shards[j];
+			Shard right = this.shards[j + 1];
+			long leftStamp = left.lock.writeLock();
+			long rightStamp = right.lock.writeLock();
+			try
+			{
+				int leftSize = left.tree.size();
+				int rightSize = right.tree.size();
+				long bound;
+				if(this.unbalanced(leftSize, rightSize))
+				{// the largest key left keeps is the last one below the new bound
+					WAVLTree.WAVLNode last = left.tree.selectNode(leftSize - (leftSize - rightSize) / 2);
+					int key = last.getKey();
+					String value = last.getValue();
+					WAVLTree[] parts = left.tree.split(key);
+					parts[0].insert(key, value);
+					left.tree = parts[0];
+					right.tree = this.concatenate(parts[1], right.tree);
+					bound = key + 1L;
+				}
+				else if(this.unbalanced(rightSize, leftSize))
+				{// the largest key right gives away is the last one below the new bound
+					WAVLTree.WAVLNode last = right.tree.selectNode((rightSize - leftSize) / 2);
+					int key = last.getKey();
+					String value = last.getValue();
+					WAVLTree[] parts = right.tree.split(key);
+					parts[0].insert(key, value);
+					right.tree = parts[1];
+					left.tree = this.concatenate(left.tree, parts[0]);
+					bound = key + 1L;
+				}
+				else
+				{
+					return false;
+				}
+				left.high = bound;
+				right.low = bound;
+				left.size = left.tree.size();
+				right.size = right.tree.size();
+				long[] lows = this.lows.clone();
+				lows[j + 1] = bound;
+				this.lows = lows;
+				return true;
+			}
+			finally
+			{
+				right.lock.unlockWrite(rightStamp);
+				left.lock.unlockWrite(leftStamp);
+			}
+		}
+		
+		// joins two trees, every key of smaller below every key of larger, and returns the result
+		private WAVLTree concatenate(WAVLTree smaller, WAVLTree larger)
+		{
+			if(larger.empty())
+			{
+				return smaller;
+			}
+			WAVLTree.WAVLNode first = larger.selectNode(1);
+			int key = first.getKey();
+			String value = first.getValue();
+			larger.delete(key);
+			smaller.join(key, value, larger);
+			return smaller;
+		}
+	}
+
+	/**
+	 *
+	 * WAVLBenchmark
+	 *
+	 * A throughput benchmark for WAVLTree, run with
+	 * java WAVLTree_itayshalev_eyalpintzov bench [size ...]
+	 *
+	 * For every key distribution and size it builds a tree and times insert, search,
+	 * select, range counts, keysToArray (also in parallel), infoToArray and delete, and freeze with search and
+	 * range counts on the FrozenWAVLTree next to the pointer tree, and insert, search, select and
+	 * delete on a BucketWAVLTree, reporting ops/sec, bytes allocated
+	 * per operation (when the JVM can count them) and, for insert and delete,
+	 * the average number of rebalancing operations returned per call, split for the WAVLTree
+	 * into promotions, demotions and rotations by WAVLMetrics in separate, untimed runs.
+	 * Every measurement is repeated until two runs in a row take times within STEADY of each other,
+	 * at most MAX_ROUNDS times, and the last run is reported, so the JIT has compiled the measured code.
+	 * Runs at sizes around 1000 take well under a millisecond and still show compilation and timer noise:
+	 * compare them between builds, not with the larger sizes.
+	 *
+	 * java WAVLTree_itayshalev_eyalpintzov walbench [operations [threads]]
+	 * times concurrent inserts into a DurableWAVLTree under every WALSyncPolicy instead.
+	 * java WAVLTree_itayshalev_eyalpintzov shardbench [operations [threads]]
+	 * compares concurrent inserts into a ConcurrentWAVLTree and a ShardedWAVLTree.
+	 * java WAVLTree_itayshalev_eyalpintzov mvccbench [operations]
+	 * times writes into an MVCCWAVLTree with and without a reader scanning pinned versions.
+	 *
+	 */
+	public class WAVLBenchmark {
+		
+		private static final String[] DISTRIBUTIONS = {"sequential", "random", "zipfian", "adversarial"};
+		private static final double ZIPF_THETA = 0.99;
+		private static final double STEADY = 0.1;
+		private static final int MAX_ROUNDS = 10;
+		
+		private final Random random = new Random(42);
+		// a sink for results, so the JIT can not drop the measured calls
+		private long blackhole;
+		// the time of the previous run of the current measurement
+		private long previousNanos;
+		
+		public void run(int[] sizes)
+		{
+			System.out.println(String.format("%-12s %10s %-12s %14s %12s %14s %10s %10s %10s", "distribution", "size", "operation", "ops/sec", "bytes/op", "rebalance/op", "promote/op", "demote/op", "rotate/op"));
+			for(int d = 0; d < DISTRIBUTIONS.length; d++)
+			{
+				for(int s = 0; s < sizes.length; s++)
+				{
+					this.runOne(DISTRIBUTIONS[d], sizes[s]);
+				}
+			}
+			if(this.blackhole == 42)
+			{
+				System.out.println();
+			}
+		}
+		
+		private void runOne(String distribution, int n)
+		{
+			int[] insertOrder = this.insertOrder(distribution, n);
+			int[] queries = this.queries(distribution, n);
+			String[] values = new String[n];
+			for(int i = 0; i < n; i++)
+			{
+				values[i] = Integer.toString(i);
+			}
+			
+			long[][] steps = this.rebalanceSteps(insertOrder, values);
+			WAVLTree tree = null;
+			long[] measurement = null;
+			for(int round = 0; this.again(round, measurement); round++)
+			{
+				tree = new WAVLTree();
+				long rebalance = 0;
+				long start = System.nanoTime();
+				long allocated = allocatedBytes();
+				for(int i = 0; i < n; i++)
+				{
+					rebalance += tree.insert(insertOrder[i], values[insertOrder[i]]);
+				}
+				measurement = new long[] {System.nanoTime() - start, this.allocatedSince(allocated), rebalance};
+			}
+			this.report(distribution, n, "insert", n, measurement, steps[0]);
+			
+			for(int round = 0; this.again(round, measurement); round++)
+			{
+				long start = System.nanoTime();
+				long allocated = allocatedBytes();
+				for(int i = 0; i < n; i++)
+				{
+					this.blackhole += tree.search(queries[i]).length();
+				}
+				measurement = new long[] {System.nanoTime() - start, this.allocatedSince(allocated), -1};
+			}
+			this.report(distribution, n, "search", n, measurement, null);
+			
+			for(int round = 0; this.again(round, measurement); round++)
+			{
+				long start = System.nanoTime();
+				long allocated = allocatedBytes();
+				for(int i = 0; i < n; i++)
+				{
+					this.blackhole += tree.select(queries[i] + 1).length();
+				}
+				measurement = new long[] {System.nanoTime() - start, this.allocatedSince(allocated), -1};
+			}
+			this.report(distribution, n, "select", n, measurement, null);
+			
+			FrozenWAVLTree frozen = null;
+			for(int round = 0; this.again(round, measurement); round++)
+			{
+				long start = System.nanoTime();
+				long allocated = allocatedBytes();
+				frozen = tree.freeze();
+				measurement = new long[] {System.nanoTime() - start, this.allocatedSince(allocated), -1};
+			}
+			this.report(distribution, n, "freeze", 1, measurement, null);
+			
+			for(int round = 0; this.again(round, measurement); round++)
+			{
+				long start = System.nanoTime();
+				long allocated = allocatedBytes();
+				for(int i = 0; i < n; i++)
+				{
+					this.blackhole += frozen.search(queries[i]).length();
+				}
+				measurement = new long[] {System.nanoTime() - start, this.allocatedSince(allocated), -1};
+			}
+			this.report(distribution, n, "frozenSearch", n, measurement, null);
+			
+			for(int round = 0; this.again(round, measurement); round++)
+			{
+				long start = System.nanoTime();
+				long allocated = allocatedBytes();
+				for(int i = 0; i < n; i++)
+				{
+					this.blackhole += frozen.rangeCount(queries[i], queries[i] + 64);
+				}
+				measurement = new long[] {System.nanoTime() - start, this.allocatedSince(allocated), -1};
+			}
+			this.report(distribution, n, "frozenRange", n, measurement, null);
+			
+			for(int round = 0; this.again(round, measurement); round++)
+			{
+				long start = System.nanoTime();
+				long allocated = allocatedBytes();
+				for(int i = 0; i < n; i++)
+				{
+					this.blackhole += tree.rangeCount(queries[i], queries[i] + 64);
+				}
+				measurement = new long[] {System.nanoTime() - start, this.allocatedSince(allocated), -1};
+			}
+			this.report(distribution, n, "range", n, measurement, null);
+			
+			for(int round = 0; this.again(round, measurement); round++)
+			{
+				long start = System.nanoTime();
+				long allocated = allocatedBytes();
+				this.blackhole += tree.keysToArray().length;
+				measurement = new long[] {System.nanoTime() - start, this.allocatedSince(allocated), -1};
+			}
+			this.report(distribution, n, "keysToArray", 1, measurement, null);
+			
+			for(int round = 0; this.again(round, measurement); round++)
+			{
+				long start = System.nanoTime();
+				long allocated = allocatedBytes();
+				this.blackhole += tree.keysToArray(true).length;
+				measurement = new long[] {System.nanoTime() - start, this.allocatedSince(allocated), -1};
+			}
+			this.report(distribution, n, "keysParallel", 1, measurement, null);
+			
+			for(int round = 0; this.again(round, measurement); round++)
+			{
+				long start = System.nanoTime();
+				long allocated = allocatedBytes();
+				this.blackhole += tree.infoToArray().length;
+				measurement = new long[] {System.nanoTime() - start, this.allocatedSince(allocated), -1};
+			}
+			this.report(distribution, n, "infoToArray", 1, measurement, null);
+			
+			for(int round = 0; this.again(round, measurement); round++)
+			{
+				if(round > 0)
+				{
+					for(int i = 0; i < n; i++)
+					{
+						tree.insert(insertOrder[i], values[insertOrder[i]]);
+					}
+				}
+				long rebalance = 0;
+				long start = System.nanoTime();
+				long allocated = allocatedBytes();
+				for(int i = 0; i < n; i++)
+				{
+					rebalance += tree.delete(insertOrder[i]);
+				}
+				measurement = new long[] {System.nanoTime() - start, this.allocatedSince(allocated), rebalance};
+			}
+			this.report(distribution, n, "delete", n, measurement, steps[1]);
+			
+			BucketWAVLTree buckets = null;
+			for(int round = 0; this.again(round, measurement); round++)
+			{
+				buckets = new BucketWAVLTree();
+				long rebalance = 0;
+				long start = System.nanoTime();
+				long allocated = allocatedBytes();
+				for(int i = 0; i < n; i++)
+				{
+					rebalance += buckets.insert(insertOrder[i], values[insertOrder[i]]);
+				}
+				measurement = new long[] {System.nanoTime() - start, this.allocatedSince(allocated), rebalance};
+			}
+			this.report(distribution, n, "bucketInsert", n, measurement, null);
+			
+			for(int round = 0; this.again(round, measurement); round++)
+			{
+				long start = System.nanoTime();
+				long allocated = allocatedBytes();
+				for(int i = 0; i < n; i++)
+				{
+					this.blackhole += buckets.search(queries[i]).length();
+				}
+				measurement = new long[] {System.nanoTime() - start, this.allocatedSince(allocated), -1};
+			}
+			this.report(distribution, n, "bucketSearch", n, measurement, null);
+			
+			for(int round = 0; this.again(round, measurement); round++)
+			{
+				long start = System.nanoTime();
+				long allocated = allocatedBytes();
+				for(int i = 0; i < n; i++)
+				{
+					this.blackhole += buckets.select(queries[i] + 1).length();
+				}
+				measurement = new long[] {System.nanoTime() - start, this.allocatedSince(allocated), -1};
+			}
+			this.report(distribution, n, "bucketSelect", n, measurement, null);
+			
+			for(int round = 0; this.again(round, measurement); round++)
+			{
+				if(round > 0)
+				{
+					for(int i = 0; i < n; i++)
+					{
+						buckets.insert(insertOrder[i], values[insertOrder[i]]);
+					}
+				}
+				long rebalance = 0;
+				long start = System.nanoTime();
+				long allocated = allocatedBytes();
+				for(int i = 0; i < n; i++)
+				{
+					rebalance += buckets.delete(insertOrder[i]);
+				}
+				measurement = new long[] {System.nanoTime() - start, this.allocatedSince(allocated), rebalance};
+			}
+			this.report(distribution, n, "bucketDelete", n, measurement, null);
+		}
+		
+		/**
+		 * public void runDurable(int operations, int threads)
+		 *
+		 * Times operations random inserts, spread over threads threads, into a DurableWAVLTree
+		 * in a temporary directory under every sync policy, and reports how many operations
+		 * shared each force of the log.
+		 */
+		public void runDurable(int operations, int threads) throws IOException, InterruptedException
+		{
+			System.out.println(String.format("%-10s %8s %10s %14s %12s", "policy", "threads", "operations", "ops/sec", "ops/force"));
+			WALSyncPolicy[] policies = WALSyncPolicy.values();
+			for(int p = 0; p < policies.length; p++)
+			{
+				Path directory = Files.createTempDirectory("wavl-wal");
+				final DurableWAVLTree tree = new DurableWAVLTree(directory.toString(), policies[p], 0);
+				final int perThread = operations / threads;
+				Thread[] workers = new Thread[threads];
+				for(int t = 0; t < threads; t++)
+				{
+					final Random random = new Random(this.random.nextLong());
+					workers[t] = new Thread(new Runnable()
+					{
+						public void run()
+						{
+							for(int i = 0; i < perThread; i++)
+							{
+								int key = random.nextInt();
+								tree.insert(key, Integer.toString(key));
+							}
+						}
+					});
+				}
+				long start = System.nanoTime();
+				for(int t = 0; t < threads; t++)
+				{
+					workers[t].start();
+				}
+				for(int t = 0; t < threads; t++)
+				{
+					workers[t].join();
+				}
+				long elapsed = System.nanoTime() - start;
+				long syncs = tree.getSyncCount();
+				tree.close();
+				int done = perThread * threads;
+				String opsPerSync = (syncs == 0) ? "n/a" : String.format("%.1f", (double) done / syncs);
+				System.out.println(String.format("%-10s %8d %10d %14.0f %12s", policies[p], threads, done, done * 1e9 / Math.max(elapsed, 1), opsPerSync));
+				Files.deleteIfExists(directory.resolve("wal"));
+				Files.deleteIfExists(directory.resolve("checkpoint"));
+				Files.delete(directory);
+			}
+		}
+		
+		/**
+		 * public void runSharded(int operations, int threads)
+		 *
+		 * Times operations random inserts, spread over threads threads, into a ConcurrentWAVLTree
+		 * and into a ShardedWAVLTree of one shard per thread, to show how writes scale with cores.
+		 */
+		public void runSharded(int operations, int threads) throws InterruptedException
+		{
+			System.out.println(String.format("%-12s %8s %10s %14s", "tree", "threads", "operations", "ops/sec"));
+			final int perThread = operations / threads;
+			for(int round = 0; round < 2; round++)
+			{
+				final ConcurrentWAVLTree concurrent = new ConcurrentWAVLTree();
+				final ShardedWAVLTree sharded = new ShardedWAVLTree(threads);
+				for(int kind = 0; kind < 2; kind++)
+				{
+					final boolean useSharded = (kind == 1);
+					Thread[] workers = new Thread[threads];
+					for(int t = 0; t < threads; t++)
+					{
+						final Random random = new Random(this.random.nextLong());
+						workers[t] = new Thread(new Runnable()
+						{
+							public void run()
+							{
+								for(int i = 0; i < perThread; i++)
+								{
+									int key = random.nextInt();
+									if(useSharded)
+									{
+										sharded.insert(key, "");
+									}
+									else
+									{
+										concurrent.insert(key, "");
+									}
+								}
+							}
+						});
+					}
+					long start = System.nanoTime();
+					for(int t = 0; t < threads; t++)
+					{
+						workers[t].start();
+					}
+					for(int t = 0; t < threads; t++)
+					{
+						workers[t].join();
+					}
+					long elapsed = System.nanoTime() - start;
+					if(round == 1)
+					{
+						int done = perThread * threads;
+						System.out.println(String.format("%-12s %8d %10d %14.0f", useSharded ? "sharded" : "concurrent", threads, done, done * 1e9 / Math.max(elapsed, 1)));
+					}
+				}
+			}
+		}
+		
+		/**
+		 * public void runMVCC(int operations)
+		 *
+		 * Times operations random inserts and deletes into an MVCCWAVLTree, first alone and then
+		 * while a reader keeps pinning the current epoch and scanning all keys of that version,
+		 * checking that every scan sees as many keys as its version holds.
+		 */
+		public void runMVCC(int operations) throws InterruptedException
+		{
+			System.out.println(String.format("%-12s %10s %14s %10s %12s", "readers", "operations", "ops/sec", "scans", "max retained"));
+			for(int round = 0; round < 2; round++)
+			{
+				for(int scanning = 0; scanning < 2; scanning++)
+				{
+					final MVCCWAVLTree tree = new MVCCWAVLTree();
+					final int count = operations;
+					final Random random = new Random(this.random.nextLong());
+					for(int i = 0; i < count / 2; i++)
+					{
+						tree.insert(random.nextInt(count), "");
+					}
+					Thread writer = new Thread(new Runnable()
+					{
+						public void run()
+						{
+							for(int i = 0; i < count; i++)
+							{
+								int key = random.nextInt(count);
+								if(random.nextBoolean())
+								{
+									tree.insert(key, "");
+								}
+								else
+								{
+									tree.delete(key);
+								}
+							}
+						}
+					});
+					long scans = 0;
+					int maxRetained = 0;
+					long start = System.nanoTime();
+					writer.start();
+					while(scanning == 1 && writer.isAlive())
+					{
+						MVCCWAVLTree.ReadView view = tree.pin();
+						try
+						{
+							PersistentWAVLTree version = view.getTree();
+							if(version.keysToArray().length != version.size())
+							{
+								throw new IllegalStateException("scan of epoch " + view.getEpoch() + " saw a torn tree");
+							}
+							maxRetained = Math.max(maxRetained, tree.getRetainedVersions());
+						}
+						finally
+						{
+							view.close();
+						}
+						scans++;
+					}
+					writer.join();
+					long elapsed = System.nanoTime() - start;
+					if(round == 1)
+					{
+						System.out.println(String.format("%-12s %10d %14.0f %10d %12d", (scanning == 1) ? "scanning" : "none", count, count * 1e9 / Math.max(elapsed, 1), scans, maxRetained));
+					}
+				}
+			}
+		}
+		
+		// steps holds the promotions, demotions and rotations of the operations, or is null
+		private void report(String distribution, int n, String operation, int operations, long[] measurement, long[] steps)
+		{
+			double opsPerSec = operations * 1e9 / Math.max(measurement[0], 1);
+			String bytesPerOp = (measurement[1] < 0) ? "n/a" : String.format("%.1f", (double) measurement[1] / operations);
+			String rebalancePerOp = (measurement[2] < 0) ? "" : String.format("%.3f", (double) measurement[2] / operations);
+			String[] stepsPerOp = {"", "", ""};
+			for(int j = 0; steps != null && j < steps.length; j++)
+			{
+				stepsPerOp[j] = String.format("%.3f", (double) steps[j] / operations);
+			}
+			System.out.println(String.format("%-12s %10d %-12s %14.0f %12s %14s %10s %10s %10s", distribution, n, operation, opsPerSec, bytesPerOp, rebalancePerOp, stepsPerOp[0], stepsPerOp[1], stepsPerOp[2]));
+		}
+		
+		// the promotions, demotions and rotations (a double rotation counting as 2) of inserting the keys
+		// in insertOrder into a new tree and of deleting them again, counted by WAVLMetrics in untimed runs
+		private long[][] rebalanceSteps(int[] insertOrder, String[] values)
+		{
+			WAVLTree tree = new WAVLTree();
+			WAVLMetrics metrics = tree.enableMetrics();
+			long[][] steps = new long[2][];
+			for(int i = 0; i < insertOrder.length; i++)
+			{
+				tree.insert(insertOrder[i], values[insertOrder[i]]);
+			}
+			steps[0] = new long[] {metrics.getPromotions(), metrics.getDemotions(), metrics.getSingleRotations() + 2 * metrics.getDoubleRotations()};
+			metrics.reset();
+			for(int i = 0; i < insertOrder.length; i++)
+			{
+				tree.delete(insertOrder[i]);
+			}
+			steps[1] = new long[] {metrics.getPromotions(), metrics.getDemotions(), metrics.getSingleRotations() + 2 * metrics.getDoubleRotations()};
+			return steps;
+		}
+		
+		// the order in which keys 0..n-1 are inserted (and later deleted)
+		private int[] insertOrder(String distribution, int n)
+		{
+			int[] keys = new int[n];
+			if(distribution.equals("adversarial"))
+			{// alternate between both ends, so every insert descends along the tree's spine
+				for(int i = 0, low = 0, high = n - 1; i < n; i++)
+				{
+					keys[i] = (i % 2 == 0) ? low++ : high--;
+				}
+				return keys;
+			}
+			for(int i = 0; i < n; i++)
+			{
+				keys[i] = i;
+			}
+			if(!distribution.equals("sequential"))
+			{
+				for(int i = n - 1; i > 0; i--)
+				{
+					int j = this.random.nextInt(i + 1);
+					int temp = keys[i];
+					keys[i] = keys[j];
+					keys[j] = temp;
+				}
+			}
+			return keys;
+		}
+		
+		// n keys to search for, all of them in the tree
+		private int[] queries(String distribution, int n)
+		{
+			int[] keys = new int[n];
+			if(distribution.equals("zipfian"))
+			{// YCSB's zipfian generator (Gray et al.), key 0 is the most popular one
+				double zetan = 0;
+				for(int i = 1; i <= n; i++)
+				{
+					zetan += 1 / Math.pow(i, ZIPF_THETA);
+				}
+				double zeta2 = 1 + 1 / Math.pow(2, ZIPF_THETA);
+				double alpha = 1 / (1 - ZIPF_THETA);
+				double eta = (1 - Math.pow(2.0 / n, 1 - ZIPF_THETA)) / (1 - zeta2 / zetan);
+				for(int i = 0; i < n; i++)
+				{
+					double u = this.random.nextDouble();
+					double uz = u * zetan;
+					if(uz < 1)
+					{
+						keys[i] = 0;
+					}
+					else if(uz < zeta2)
+					{
+						keys[i] = Math.min(1, n - 1);
+					}
+					else
+					{
+						keys[i] = (int) Math.min(n - 1, (long) (n * Math.pow(eta * u - eta + 1, alpha)));
+					}
+				}
+				return keys;
+			}
+			if(distribution.equals("random"))
+			{
+				for(int i = 0; i < n; i++)
+				{
+					keys[i] = this.random.nextInt(n);
+				}
+				return keys;
+			}
+			return this.insertOrder(distribution, n);
+		}
+		
+		// whether to run a measurement (again) after round runs, measurement holding the last one
+		private boolean again(int round, long[] measurement)
+		{
+			if(round == 0)
+			{
+				return true;
+			}
+			boolean steady = round > 1 && Math.abs(measurement[0] - this.previousNanos) <= STEADY * this.previousNanos;
+			this.previousNanos = measurement[0];
+			return !steady && round < MAX_ROUNDS;
+		}
+		
+		// bytes allocated so far by this thread, or -1 if the JVM does not count them
+		private long allocatedBytes()
+		{
+			ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if(bean instanceof com.sun.management.ThreadMXBean)
+			{
+				return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+			return -1;
+		}
+		
+		// bytes allocated by this thread since allocatedBytes() returned allocated, or -1 if either reading is missing
+		private long allocatedSince(long allocated)
+		{
+			long now = this.allocatedBytes();
+			return (allocated < 0 || now < 0) ? -1 : now - allocated;
+		}
+	}
+
+	/**
+	 *
+	 * AbstractWAVLMap
+	 *
+	 * The key independent part of the WAVL maps below - ranks, subtree sizes, rotations,
+	 * rebalancing, select and min/max. The subclasses add a key to Node and do the descents
+	 * themselves, so int and long keys are compared without boxing.
+	 * Rebalancing is the same as in WAVLTree, so insert and delete return the same counts.
+	 * Here external nodes are null, with rank -1 and subtree size 0.
+	 *
+	 */
+	public abstract class AbstractWAVLMap<V> {
+		
+		protected Node root;
+		protected Node min;
+		protected Node max;
+		
+		protected class Node {
+			protected V value;
+			protected int rank;
+			protected int subTreeSize;
+			protected Node parent;
+			protected Node left;
+			protected Node right;
+			
+			protected Node(V value)
+			{
+				this.value = value;
+				this.rank = 0;
+				this.subTreeSize = 1;
+			}
+		}
+		
+		/**
+		 * public boolean empty()
+		 *
+		 * returns true if and only if the map is empty
+		 *
+		 */
+		public boolean empty()
+		{
+			return this.root == null;
+		}
+		
+		/**
+		 * public int size()
+		 *
+		 * Returns the number of items in the map.
+		 *
+		 */
+		public int size()
+		{
+			return this.sizeOf(this.root);
+		}
+		
+		/**
+		 * public V min()
+		 *
+		 * Returns the info of the item with the smallest key, or null if the map is empty
+		 */
+		public V min()
+		{
+			return (this.min == null) ? null : this.min.value;
+		}
+		
+		/**
+		 * public V max()
+		 *
+		 * Returns the info of the item with the largest key, or null if the map is empty
+		 */
+		public V max()
+		{
+			return (this.max == null) ? null : this.max.value;
+		}
+		
+		/**
+		 * public V select(int i)
+		 *
+		 * Returns the info of the i'th smallest key, or null if i is out of range.
+		 */
+		public V select(int i)
+		{
+			Node node = this.selectNode(i);
+			return (node == null) ? null : node.value;
+		}
+		
+		/**
+		 * public V[] infoToArray(V[] arr)
+		 *
+		 * Fills arr, which must have room for size() items, with the info of all items
+		 * sorted by their keys, and returns it.
+		 */
+		public V[] infoToArray(V[] arr)
+		{
+			int index = 0;
+			for(Node node = this.min; node != null; node = this.successor(node))
+			{
+				arr[index++] = node.value;
+			}
+			return arr;
+		}
+		
+		protected Node selectNode(int i)
+		{
+			if(i < 1 || i > this.size())
+			{
+				return null;
+			}
+			Node current = this.root;
+			while(true)
+			{
+				int leftSize = this.sizeOf(current.left);
+				if(i == leftSize + 1)
+				{
+					return current;
+				}
+				else if(i <= leftSize)
+				{
+					current = current.left;
+				}
+				else
+				{
+					i -= leftSize + 1;
+					current = current.right;
+				}
+			}
+		}
+		
+		// the position of node in the sorted order, see WAVLTree.rank
+		protected int positionOf(Node node)
+		{
+			int position = this.sizeOf(node.left) + 1;
+			for(Node current = node; current.parent != null; current = current.parent)
+			{
+				if(current.parent.right == current)
+				{
+					position += this.sizeOf(current.parent.left) + 1;
+				}
+			}
+			return position;
+		}
+		
+		protected int rankOf(Node node)
+		{
+			return (node == null) ? -1 : node.rank;
+		}
+		
+		protected int sizeOf(Node node)
+		{
+			return (node == null) ? 0 : node.subTreeSize;
+		}
+		
+		/**
+		 * protected void augment(Node node)
+		 *
+		 * Called whenever the subtree of node changed, after its sons' subtrees were brought up to date:
+		 * bottom up along the path of an insertion or deletion before rebalancing, and for both nodes
+		 * of every rotation. Subclasses that keep per subtree data in their nodes recompute it here,
+		 * from node and its sons only. Does nothing by default.
+		 */
+		protected void augment(Node node)
+		{
+		}
+		
+		/**
+		 * protected int insertNode(Node parent, Node node, boolean asLeft)
+		 *
+		 * Hangs the new node under parent (which had no son on that side), or makes it the root
+		 * if parent is null, and rebalances. Returns the number of rebalancing operations.
+		 */
+		protected int insertNode(Node parent, Node node, boolean asLeft)
+		{
+			node.parent = parent;
+			if(parent == null)
+			{
+				this.root = node;
+				this.min = node;
+				this.max = node;
+				return 0;
+			}
+			if(asLeft)
+			{
+				parent.left = node;
+				if(parent == this.min)
+				{
+					this.min = node;
+				}
+			}
+			else
+			{
+				parent.right = node;
+				if(parent == this.max)
+				{
+					this.max = node;
+				}
+			}
+			for(Node current = parent; current != null; current = current.parent)
+			{
+				current.subTreeSize++;
+				this.augment(current);
+			}
+			
+			int numRebalance = 0;
+			Node current = parent;
+			while(current != null)
+			{
+				int leftDiffRank = current.rank - this.rankOf(current.left);
+				int rightDiffRank = current.rank - this.rankOf(current.right);
+				if(leftDiffRank > 0 && rightDiffRank > 0)
+				{
+					return numRebalance;
+				}
+				if(leftDiffRank + rightDiffRank == 1)
+				{//promote
+					current.rank++;
+					numRebalance++;
+					current = current.parent;
+					continue;
+				}
+				if(leftDiffRank == 0)
+				{
+					Node left = current.left;
+					if(left.rank - this.rankOf(left.left) == 1)
+					{//one rotate
+						this.rotateRight(current);
+						current.rank--;
+						return numRebalance + 1;
+					}
+					Node leftRight = left.right;
+					this.rotateLeft(left);
+					this.rotateRight(current);
+					left.rank--;
+					current.rank--;
+					leftRight.rank++;
+					return numRebalance + 2;
+				}
+				else
+				{
+					Node right = current.right;
+					if(right.rank - this.rankOf(right.right) == 1)
+					{//one rotate
+						this.rotateLeft(current);
+						current.rank--;
+						return numRebalance + 1;
+					}
+					Node rightLeft = right.left;
+					this.rotateRight(right);
+					this.rotateLeft(current);
+					right.rank--;
+					current.rank--;
+					rightLeft.rank++;
+					return numRebalance + 2;
+				}
+			}
+			return numRebalance;
+		}
+		
+		/**
+		 * protected int deleteNode(Node node)
+		 *
+		 * Removes node from the tree and rebalances. Returns the number of rebalancing operations.
+		 */
+		protected int deleteNode(Node node)
+		{
+			if(node == this.min)
+			{
+				this.min = this.successor(node);
+			}
+			if(node == this.max)
+			{
+				this.max = this.predecessor(node);
+			}
+			if(node.left != null && node.right != null)
+			{// move the successor into node's place, node takes the successor's place
+				Node successor = this.successor(node);
+				Node successorParent = successor.parent;
+				Node successorRight = successor.right;
+				this.replaceInParent(node, successor);
+				successor.left = node.left;
+				successor.left.parent = successor;
+				if(successor == node.right)
+				{
+					successor.right = node;
+					node.parent = successor;
+				}
+				else
+				{
+					successor.right = node.right;
+					successor.right.parent = successor;
+					successorParent.left = node;
+					node.parent = successorParent;
+				}
+				node.left = null;
+				node.right = successorRight;
+				if(successorRight != null)
+				{
+					successorRight.parent = node;
+				}
+				int rank = node.rank;
+				node.rank = successor.rank;
+				successor.rank = rank;
+				int size = node.subTreeSize;
+				node.subTreeSize = successor.subTreeSize;
+				successor.subTreeSize = size;
+			}
+			
+			Node son = (node.left != null) ? node.left : node.right;
+			Node parent = node.parent;
+			this.replaceInParent(node, son);
+			node.parent = null;
+			node.left = null;
+			node.right = null;
+			for(Node current = parent; current != null; current = current.parent)
+			{
+				current.subTreeSize--;
+				this.augment(current);
+			}
+			
+			int numRebalance = 0;
+			Node current = parent;
+			while(current != null)
+			{
+				Node left = current.left;
+				Node right = current.right;
+				int leftDiffRank = current.rank - this.rankOf(left);
+				int rightDiffRank = current.rank - this.rankOf(right);
+				
+				if(left == null && right == null && current.rank > 0)
+				{//2,2 leaf - demote
+					current.rank = 0;
+					numRebalance++;
+					current = current.parent;
+					continue;
+				}
+				if(leftDiffRank <= 2 && rightDiffRank <= 2)
+				{
+					return numRebalance;
+				}
+				if(leftDiffRank == 2 || rightDiffRank == 2)
+				{//3,2 - demote
+					current.rank--;
+					numRebalance++;
+					current = current.parent;
+					continue;
+				}
+				
+				boolean siblingIsRight = (leftDiffRank == 3);
+				Node sibling = siblingIsRight ? right : left;
+				Node outer = siblingIsRight ? sibling.right : sibling.left;
+				Node inner = siblingIsRight ? sibling.left : sibling.right;
+				int siblingRank = sibling.rank;
+				
+				if(siblingRank - this.rankOf(outer) == 2 && siblingRank - this.rankOf(inner) == 2)
+				{//double demote
+					current.rank--;
+					sibling.rank--;
+					numRebalance += 2;
+					current = current.parent;
+					continue;
+				}
+				if(siblingRank - this.rankOf(outer) == 1)
+				{//one rotate
+					if(siblingIsRight)
+					{
+						this.rotateLeft(current);
+					}
+					else
+					{
+						this.rotateRight(current);
+					}
+					sibling.rank++;
+					current.rank--;
+					if(current.left == null && current.right == null)
+					{
+						current.rank = 0;
+					}
+					return numRebalance + 1;
+				}
+				//double rotate
+				if(siblingIsRight)
+				{
+					this.rotateRight(sibling);
+					this.rotateLeft(current);
+				}
+				else
+				{
+					this.rotateLeft(sibling);
+					this.rotateRight(current);
+				}
+				inner.rank += 2;
+				sibling.rank--;
+				current.rank -= 2;
+				return numRebalance + 2;
+			}
+			return numRebalance;
+		}
+		
+		protected Node successor(Node node)
+		{
+			Node current = node.right;
+			if(current != null)
+			{
+				while(current.left != null)
+				{
+					current = current.left;
+				}
+				return current;
+			}
+			current = node;
+			while(current.parent != null && current.parent.right == current)
+			{
+				current = current.parent;
+			}
+			return current.parent;
+		}
+		
+		protected Node predecessor(Node node)
+		{
+			Node current = node.left;
+			if(current != null)
+			{
+				while(current.right != null)
+				{
+					current = current.right;
+				}
+				return current;
+			}
+			current = node;
+			while(current.parent != null && current.parent.left == current)
+			{
+				current = current.parent;
+			}
+			return current.parent;
+		}
+		
+		private void replaceInParent(Node node, Node son)
+		{
+			Node parent = node.parent;
+			if(son != null)
+			{
+				son.parent = parent;
+			}
+			if(parent == null)
+			{
+				this.root = son;
+			}
+			else if(parent.left == node)
+			{
+				parent.left = son;
+			}
+			else
+			{
+				parent.right = son;
+			}
+		}
+		
+		// rotates the left son of node up into node's place
+		private void rotateRight(Node node)
+		{
+			Node left = node.left;
+			Node leftRight = left.right;
+			this.replaceInParent(node, left);
+			left.right = node;
+			node.parent = left;
+			node.left = leftRight;
+			if(leftRight != null)
+			{
+				leftRight.parent = node;
+			}
+			node.subTreeSize = this.sizeOf(leftRight) + this.sizeOf(node.right) + 1;
+			left.subTreeSize = this.sizeOf(left.left) + node.subTreeSize + 1;
+			this.augment(node);
+			this.augment(left);
+		}
+		
+		// rotates the right son of node up into node's place
+		private void rotateLeft(Node node)
+		{
+			Node right = node.right;
+			Node rightLeft = right.left;
+			this.replaceInParent(node, right);
+			right.left = node;
+			node.parent = right;
+			node.right = rightLeft;
+			if(rightLeft != null)
+			{
+				rightLeft.parent = node;
+			}
+			node.subTreeSize = this.sizeOf(node.left) + this.sizeOf(rightLeft) + 1;
+			right.subTreeSize = node.subTreeSize + this.sizeOf(right.right) + 1;
+			this.augment(node);
+			this.augment(right);
+		}
+	}
+	
+	/**
+	 *
+	 * WAVLMap
+	 *
+	 * A WAVL tree map from keys of any type, ordered by a Comparator
+	 * or by their natural ordering, to infos of any type.
+	 *
+	 */
+	public class WAVLMap<K, V> extends AbstractWAVLMap<V> {
+		
+		private final Comparator<? super K> comparator;
+		
+		private class KeyNode extends Node {
+			private final K key;
+			
+			private KeyNode(K key, V value)
+			{
+				super(value);
+				this.key = key;
+			}
+		}
+		
+		/**
+		 * public WAVLMap()
+		 *
+		 * An empty map ordered by the keys' natural ordering (the keys must be Comparable).
+		 */
+		public WAVLMap()
+		{
+			this(null);
+		}
+		
+		public WAVLMap(Comparator<? super K> comparator)
+		{
+			this.comparator = comparator;
+		}
+		
+		@SuppressWarnings("unchecked")
+		private K keyOf(Node node)
+		{
+			return ((KeyNode) node).key;
+		}
+		
+		@SuppressWarnings("unchecked")
+		private int compare(K a, K b)
+		{
+			if(this.comparator == null)
+			{
+				return ((Comparable<? super K>) a).compareTo(b);
+			}
+			return this.comparator.compare(a, b);
+		}
+		
+		/**
+		 * public V search(K k)
+		 *
+		 * returns the info of an item with key k if it exists in the map
+		 * otherwise, returns null
+		 */
+		public V search(K k)
+		{
+			Node node = this.searchNode(k);
+			return (node == null) ? null : node.value;
+		}
+		
+		/**
+		 * public int insert(K k, V i)
+		 *
+		 * inserts an item with key k and info i, see WAVLTree.insert.
+		 * returns -1 if an item with key k already exists in the map.
+		 */
+		public int insert(K k, V i)
+		{
+			Node parent = null;
+			Node current = this.root;
+			int comparison = 0;
+			while(current != null)
+			{
+				comparison = this.compare(k, this.keyOf(current));
+				if(comparison == 0)
+				{
+					return -1;
+				}
+				parent = current;
+				current = (comparison < 0) ? current.left : current.right;
+			}
+			return this.insertNode(parent, new KeyNode(k, i), comparison < 0);
+		}
+		
+		/**
+		 * public int delete(K k)
+		 *
+		 * deletes the item with key k, see WAVLTree.delete.
+		 * returns -1 if an item with key k was not found in the map.
+		 */
+		public int delete(K k)
+		{
+			Node node = this.searchNode(k);
+			if(node == null)
+			{
+				return -1;
+			}
+			return this.deleteNode(node);
+		}
+		
+		/**
+		 * public int rank(K k)
+		 *
+		 * Returns the position of key k in the sorted order of the keys,
+		 * or -1 if an item with key k does not exist in the map.
+		 */
+		public int rank(K k)
+		{
+			Node node = this.searchNode(k);
+			return (node == null) ? -1 : this.positionOf(node);
+		}
+		
+		/**
+		 * public K[] keysToArray(K[] arr)
+		 *
+		 * Fills arr, which must have room for size() keys, with all keys in sorted order and returns it.
+		 */
+		public K[] keysToArray(K[] arr)
+		{
+			int index = 0;
+			for(Node node = this.min; node != null; node = this.successor(node))
+			{
+				arr[index++] = this.keyOf(node);
+			}
+			return arr;
+		}
+		
+		private Node searchNode(K k)
+		{
+			Node current = this.root;
+			while(current != null)
+			{
+				int comparison = this.compare(k, this.keyOf(current));
+				if(comparison == 0)
+				{
+					return current;
+				}
+				current = (comparison < 0) ? current.left : current.right;
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 *
+	 * LongWAVLMap
+	 *
+	 * A WAVL tree map from long keys to infos of any type, keys are never boxed.
+	 *
+	 */
+	public class LongWAVLMap<V> extends AbstractWAVLMap<V> {
+		
+		private class LongNode extends Node {
+			private final long key;
+			
+			private LongNode(long key, V value)
+			{
+				super(value);
+				this.key = key;
+			}
+		}
+		
+		/**
+		 * public V search(long k)
+		 *
+		 * returns the info of an item with key k if it exists in the map
+		 * otherwise, returns null
+		 */
+		public V search(long k)
+		{
+			LongNode node = this.searchNode(k);
+			return (node == null) ? null : node.value;
+		}
+		
+		/**
+		 * public int insert(long k, V i)
+		 *
+		 * inserts an item with key k and info i, see WAVLTree.insert.
+		 * returns -1 if an item with key k already exists in the map.
+		 */
+		public int insert(long k, V i)
+		{
+			Node parent = null;
+			Node current = this.root;
+			while(current != null)
+			{
+				long key = ((LongNode) current).key;
+				if(key == k)
+				{
+					return -1;
+				}
+				parent = current;
+				current = (k < key) ? current.left : current.right;
+			}
+			return this.insertNode(parent, new LongNode(k, i), parent != null && k < ((LongNode) parent).key);
+		}
+		
+		/**
+		 * public int delete(long k)
+		 *
+		 * deletes the item with key k, see WAVLTree.delete.
+		 * returns -1 if an item with key k was not found in the map.
+		 */
+		public int delete(long k)
+		{
+			LongNode node = this.searchNode(k);
+			if(node == null)
+			{
+				return -1;
+			}
+			return this.deleteNode(node);
+		}
+		
+		/**
+		 * public int rank(long k)
+		 *
+		 * Returns the position of key k in the sorted order of the keys,
+		 * or -1 if an item with key k does not exist in the map.
+		 */
+		public int rank(long k)
+		{
+			LongNode node = this.searchNode(k);
+			return (node == null) ? -1 : this.positionOf(node);
+		}
+		
+		/**
+		 * public long[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the map.
+		 */
+		public long[] keysToArray()
+		{
+			long[] arr = new long[this.size()];
+			int index = 0;
+			for(Node node = this.min; node != null; node = this.successor(node))
+			{
+				arr[index++] = ((LongNode) node).key;
+			}
+			return arr;
+		}
+		
+		private LongNode searchNode(long k)
+		{
+			Node current = this.root;
+			while(current != null)
+			{
+				long key = ((LongNode) current).key;
+				if(key == k)
+				{
+					return (LongNode) current;
+				}
+				current = (k < key) ? current.left : current.right;
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 *
+	 * IntWAVLMap
+	 *
+	 * A WAVL tree map from int keys to infos of any type, keys are never boxed.
+	 *
+	 */
+	public class IntWAVLMap<V> extends AbstractWAVLMap<V> {
+		
+		private class IntNode extends Node {
+			private final int key;
+			
+			private IntNode(int key, V value)
+			{
+				super(value);
+				this.key = key;
+			}
+		}
+		
+		/**
+		 * public V search(int k)
+		 *
+		 * returns the info of an item with key k if it exists in the map
+		 * otherwise, returns null
+		 */
+		public V search(int k)
+		{
+			IntNode node = this.searchNode(k);
+			return (node == null) ? null : node.value;
+		}
+		
+		/**
+		 * public int insert(int k, V i)
+		 *
+		 * inserts an item with key k and info i, see WAVLTree.insert.
+		 * returns -1 if an item with key k already exists in the map.
+		 */
+		public int insert(int k, V i)
+		{
+			Node parent = null;
+			Node current = this.root;
+			while(current != null)
+			{
+				int key = ((IntNode) current).key;
+				if(key == k)
+				{
+					return -1;
+				}
+				parent = current;
+				current = (k < key) ? current.left : current.right;
+			}
+			return this.insertNode(parent, new IntNode(k, i), parent != null && k < ((IntNode) parent).key);
+		}
+		
+		/**
+		 * public int delete(int k)
+		 *
+		 * deletes the item with key k, see WAVLTree.delete.
+		 * returns -1 if an item with key k was not found in the map.
+		 */
+		public int delete(int k)
+		{
+			IntNode node = this.searchNode(k);
+			if(node == null)
+			{
+				return -1;
+			}
+			return this.deleteNode(node);
+		}
+		
+		/**
+		 * public int rank(int k)
+		 *
+		 * Returns the position of key k in the sorted order of the keys,
+		 * or -1 if an item with key k does not exist in the map.
+		 */
+		public int rank(int k)
+		{
+			IntNode node = this.searchNode(k);
+			return (node == null) ? -1 : this.positionOf(node);
+		}
+		
+		/**
+		 * public int[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the map.
+		 */
+		public int[] keysToArray()
+		{
+			int[] arr = new int[this.size()];
+			int index = 0;
+			for(Node node = this.min; node != null; node = this.successor(node))
+			{
+				arr[index++] = ((IntNode) node).key;
+			}
+			return arr;
+		}
+		
+		private IntNode searchNode(int k)
+		{
+			Node current = this.root;
+			while(current != null)
+			{
+				int key = ((IntNode) current).key;
+				if(key == k)
+				{
+					return (IntNode) current;
+				}
+				current = (k < key) ? current.left : current.right;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 *
+	 * BucketWAVLTree
+	 *
+	 * A WAVL tree from int keys to String infos whose nodes are sorted buckets of up to
+	 * BUCKET_CAPACITY items each, with disjoint key ranges ordered like the nodes, instead of one item.
+	 * The bottom levels of a one item per node tree hold most of its nodes, so this saves most
+	 * of the node headers and pointers and the cache misses of walking them; a bucket is
+	 * searched with a branch free counting scan over its keys.
+	 * A full bucket is split into two half full ones, an underfull one is merged into a neighbour
+	 * when they fit in half a bucket together, and every node keeps the number of items in its
+	 * subtree through the augment hook of AbstractWAVLMap, so select and rank stay O(log n).
+	 *
+	 */
+	public class BucketWAVLTree extends AbstractWAVLMap<String> {
+		
+		private static final int BUCKET_CAPACITY = 64;
+		
+		private class BucketNode extends Node {
+			private final int[] keys;
+			private final String[] values;
+			private int count;
+			// the number of items in the subtree
+			private int entries;
+			
+			private BucketNode()
+			{
+				super(null);
+				this.keys = new int[BUCKET_CAPACITY];
+				this.values = new String[BUCKET_CAPACITY];
+			}
+		}
+		
+		protected void augment(Node node)
+		{
+			BucketNode bucket = (BucketNode) node;
+			bucket.entries = this.entriesOf(node.left) + bucket.count + this.entriesOf(node.right);
+		}
+		
+		/**
+		 * public int size()
+		 *
+		 * Returns the number of items in the tree.
+		 *
+		 */
+		public int size()
+		{
+			return this.entriesOf(this.root);
+		}
+		
+		/**
+		 * public int bucketCount()
+		 *
+		 * Returns the number of buckets, that is nodes, in the tree.
+		 *
+		 */
+		public int bucketCount()
+		{
+			return this.sizeOf(this.root);
+		}
+		
+		/**
+		 * public String search(int k)
+		 *
+		 * returns the info of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 */
+		public String search(int k)
+		{
+			BucketNode bucket = this.searchBucket(k);
+			if(bucket == null)
+			{
+				return null;
+			}
+			int index = this.indexOf(bucket, k);
+			return (index < bucket.count && bucket.keys[index] == k) ? bucket.values[index] : null;
+		}
+		
+		/**
+		 * public int insert(int k, String i)
+		 *
+		 * inserts an item with key k and info i, see WAVLTree.insert.
+		 * Only splitting a bucket changes the shape of the tree, so most inserts return 0.
+		 * returns -1 if an item with key k already exists in the tree.
+		 */
+		public int insert(int k, String i)
+		{
+			if(this.root == null)
+			{
+				BucketNode bucket = new BucketNode();
+				bucket.keys[0] = k;
+				bucket.values[0] = i;
+				bucket.count = 1;
+				bucket.entries = 1;
+				return this.insertNode(null, bucket, false);
+			}
+			// the bucket whose range holds k, or the one where the search fell off the tree
+			BucketNode bucket = null;
+			Node current = this.root;
+			while(current != null)
+			{
+				bucket = (BucketNode) current;
+				if(k < bucket.keys[0])
+				{
+					current = current.left;
+				}
+				else if(k > bucket.keys[bucket.count - 1])
+				{
+					current = current.right;
+				}
+				else
+				{
+					break;
+				}
+			}
+			int index = this.indexOf(bucket, k);
+			if(index < bucket.count && bucket.keys[index] == k)
+			{
+				return -1;
+			}
+			
+			int numRebalance = 0;
+			if(bucket.count == BUCKET_CAPACITY)
+			{//split
+				int half = BUCKET_CAPACITY / 2;
+				BucketNode upper = new BucketNode();
+				upper.count = BUCKET_CAPACITY - half;
+				upper.entries = upper.count;
+				System.arraycopy(bucket.keys, half, upper.keys, 0, upper.count);
+				System.arraycopy(bucket.values, half, upper.values, 0, upper.count);
+				Arrays.fill(bucket.values, half, BUCKET_CAPACITY, null);
+				bucket.count = half;
+				if(bucket.right == null)
+				{
+					numRebalance = this.insertNode(bucket, upper, false);
+				}
+				else
+				{
+					Node parent = bucket.right;
+					while(parent.left != null)
+					{
+						parent = parent.left;
+					}
+					numRebalance = this.insertNode(parent, upper, true);
+				}
+				if(index > half)
+				{
+					bucket = upper;
+					index -= half;
+				}
+			}
+			
+			System.arraycopy(bucket.keys, index, bucket.keys, index + 1, bucket.count - index);
+			System.arraycopy(bucket.values, index, bucket.values, index + 1, bucket.count - index);
+			bucket.keys[index] = k;
+			bucket.values[index] = i;
+			bucket.count++;
+			for(Node node = bucket; node != null; node = node.parent)
+			{
+				((BucketNode) node).entries++;
+			}
+			return numRebalance;
+		}
+		
+		/**
+		 * public int delete(int k)
+		 *
+		 * deletes the item with key k, see WAVLTree.delete.
+		 * Only removing or merging a bucket changes the shape of the tree, so most deletes return 0.
+		 * returns -1 if an item with key k was not found in the tree.
+		 */
+		public int delete(int k)
+		{
+			BucketNode bucket = this.searchBucket(k);
+			if(bucket == null)
+			{
+				return -1;
+			}
+			int index = this.indexOf(bucket, k);
+			if(index == bucket.count || bucket.keys[index] != k)
+			{
+				return -1;
+			}
+			
+			System.arraycopy(bucket.keys, index + 1, bucket.keys, index, bucket.count - index - 1);
+			System.arraycopy(bucket.values, index + 1, bucket.values, index, bucket.count - index - 1);
+			bucket.count--;
+			bucket.values[bucket.count] = null;
+			for(Node node = bucket; node != null; node = node.parent)
+			{
+				((BucketNode) node).entries--;
+			}
+			
+			if(bucket.count == 0)
+			{
+				return this.deleteNode(bucket);
+			}
+			if(bucket.count < BUCKET_CAPACITY / 4)
+			{
+				BucketNode next = (BucketNode) this.successor(bucket);
+				if(next != null && bucket.count + next.count <= BUCKET_CAPACITY / 2)
+				{
+					return this.merge(bucket, next);
+				}
+				BucketNode previous = (BucketNode) this.predecessor(bucket);
+				if(previous != null && previous.count + bucket.count <= BUCKET_CAPACITY / 2)
+				{
+					return this.merge(previous, bucket);
+				}
+			}
+			return 0;
+		}
+		
+		/**
+		 * public String min()
+		 *
+		 * Returns the info of the item with the smallest key, or null if the tree is empty
+		 */
+		public String min()
+		{
+			return (this.min == null) ? null : ((BucketNode) this.min).values[0];
+		}
+		
+		/**
+		 * public String max()
+		 *
+		 * Returns the info of the item with the largest key, or null if the tree is empty
+		 */
+		public String max()
+		{
+			BucketNode bucket = (BucketNode) this.max;
+			return (bucket == null) ? null : bucket.values[bucket.count - 1];
+		}
+		
+		/**
+		 * public String select(int i)
+		 *
+		 * Returns the info of the i'th smallest key (1-based), or "-1" if i is out of range, in O(log n).
+		 */
+		public String select(int i)
+		{
+			if(i < 1 || i > this.size())
+			{
+				return "-1";
+			}
+			Node current = this.root;
+			while(true)
+			{
+				BucketNode bucket = (BucketNode) current;
+				int leftEntries = this.entriesOf(bucket.left);
+				if(i <= leftEntries)
+				{
+					current = bucket.left;
+				}
+				else if(i <= leftEntries + bucket.count)
+				{
+					return bucket.values[i - leftEntries - 1];
+				}
+				else
+				{
+					i -= leftEntries + bucket.count;
+					current = bucket.right;
+				}
+			}
+		}
+		
+		/**
+		 * public int rank(int k)
+		 *
+		 * Returns the position of key k in the sorted order of the keys, in O(log n),
+		 * or -1 if an item with key k does not exist in the tree.
+		 */
+		public int rank(int k)
+		{
+			BucketNode bucket = this.searchBucket(k);
+			if(bucket == null)
+			{
+				return -1;
+			}
+			int index = this.indexOf(bucket, k);
+			if(index == bucket.count || bucket.keys[index] != k)
+			{
+				return -1;
+			}
+			int position = this.entriesOf(bucket.left) + index + 1;
+			for(Node current = bucket; current.parent != null; current = current.parent)
+			{
+				if(current.parent.right == current)
+				{
+					position += this.entriesOf(current.parent.left) + ((BucketNode) current.parent).count;
+				}
+			}
+			return position;
+		}
+		
+		/**
+		 * public int[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the tree.
+		 */
+		public int[] keysToArray()
+		{
+			int[] arr = new int[this.size()];
+			int index = 0;
+			for(Node node = this.min; node != null; node = this.successor(node))
+			{
+				BucketNode bucket = (BucketNode) node;
+				System.arraycopy(bucket.keys, 0, arr, index, bucket.count);
+				index += bucket.count;
+			}
+			return arr;
+		}
+		
+		/**
+		 * public String[] infoToArray(String[] arr)
+		 *
+		 * Fills arr, which must have room for size() items, with the info of all items
+		 * sorted by their keys, and returns it.
+		 */
+		public String[] infoToArray(String[] arr)
+		{
+			int index = 0;
+			for(Node node = this.min; node != null; node = this.successor(node))
+			{
+				BucketNode bucket = (BucketNode) node;
+				System.arraycopy(bucket.values, 0, arr, index, bucket.count);
+				index += bucket.count;
+			}
+			return arr;
+		}
+		
+		// the bucket whose key range holds k, or null if there is none
+		private BucketNode searchBucket(int k)
+		{
+			Node current = this.root;
+			while(current != null)
+			{
+				BucketNode bucket = (BucketNode) current;
+				if(k < bucket.keys[0])
+				{
+					current = current.left;
+				}
+				else if(k > bucket.keys[bucket.count - 1])
+				{
+					current = current.right;
+				}
+				else
+				{
+					return bucket;
+				}
+			}
+			return null;
+		}
+		
+		// the number of keys in bucket smaller than k, counted without branching on the keys
+		private int indexOf(BucketNode bucket, int k)
+		{
+			int[] keys = bucket.keys;
+			int index = 0;
+			for(int j = 0; j < bucket.count; j++)
+			{
+				index += (keys[j] < k) ? 1 : 0;
+			}
+			return index;
+		}
+		
+		// moves the items of right, the successor of left, into left and removes right
+		private int merge(BucketNode left, BucketNode right)
+		{
+			System.arraycopy(right.keys, 0, left.keys, left.count, right.count);
+			System.arraycopy(right.values, 0, left.values, left.count, right.count);
+			left.count += right.count;
+			right.count = 0;
+			// either one may be the ancestor of the other, so refresh both paths
+			this.refreshEntries(left);
+			this.refreshEntries(right);
+			return this.deleteNode(right);
+		}
+		
+		private void refreshEntries(Node node)
+		{
+			for(Node current = node; current != null; current = current.parent)
+			{
+				this.augment(current);
+			}
+		}
+		
+		private int entriesOf(Node node)
+		{
+			return (node == null) ? 0 : ((BucketNode) node).entries;
+		}
+	}
+
+	/**
+	 *
+	 * IntervalWAVLMap
+	 *
+	 * A WAVL tree map from closed int intervals [start, end] to infos of any type, ordered by start
+	 * and then by end, so several intervals may share a start. Every node also keeps the largest
+	 * end in its subtree, maintained through the augment hook of AbstractWAVLMap, which lets
+	 * overlap queries skip every subtree that ends before the query starts, and every subtree
+	 * right of an interval that starts after the query ends. For k results they take O(min(n, (k + 1) log n)),
+	 * not O(log n + k): every result may need its own root to leaf path, e.g. when long intervals
+	 * sit at leaves spread across the tree among many short ones. overlapsAny takes O(log n).
+	 *
+	 */
+	public class IntervalWAVLMap<V> extends AbstractWAVLMap<V> {
+		
+		private class IntervalNode extends Node {
+			private final int start;
+			private final int end;
+			// the largest end in the subtree
+			private int maxEnd;
+			
+			private IntervalNode(int start, int end, V value)
+			{
+				super(value);
+				this.start = start;
+				this.end = end;
+				this.maxEnd = end;
+			}
+		}
+		
+		protected void augment(Node node)
+		{
+			IntervalNode intervalNode = (IntervalNode) node;
+			int maxEnd = intervalNode.end;
+			if(node.left != null)
+			{
+				maxEnd = Math.max(maxEnd, ((IntervalNode) node.left).maxEnd);
+			}
+			if(node.right != null)
+			{
+				maxEnd = Math.max(maxEnd, ((IntervalNode) node.right).maxEnd);
+			}
+			intervalNode.maxEnd = maxEnd;
+		}
+		
+		/**
+		 * public V search(int start, int end)
+		 *
+		 * returns the info of the interval [start, end] if it exists in the map
+		 * otherwise, returns null
+		 */
+		public V search(int start, int end)
+		{
+			IntervalNode node = this.searchNode(start, end);
+			return (node == null) ? null : node.value;
+		}
+		
+		/**
+		 * public int insert(int start, int end, V i)
+		 *
+		 * inserts the interval [start, end] with info i, see WAVLTree.insert.
+		 * returns -1 if the interval already exists in the map.
+		 */
+		public int insert(int start, int end, V i)
+		{
+			if(end < start)
+			{
+				throw new IllegalArgumentException("interval [" + start + ", " + end + "] ends before it starts");
+			}
+			Node parent = null;
+			Node current = this.root;
+			int comparison = 0;
+			while(current != null)
+			{
+				comparison = this.compare(start, end, (IntervalNode) current);
+				if(comparison == 0)
+				{
+					return -1;
+				}
+				parent = current;
+				current = (comparison < 0) ? current.left : current.right;
+			}
+			return this.insertNode(parent, new IntervalNode(start, end, i), comparison < 0);
+		}
+		
+		/**
+		 * public int delete(int start, int end)
+		 *
+		 * deletes the interval [start, end], see WAVLTree.delete.
+		 * returns -1 if the interval was not found in the map.
+		 */
+		public int delete(int start, int end)
+		{
+			IntervalNode node = this.searchNode(start, end);
+			if(node == null)
+			{
+				return -1;
+			}
+			return this.deleteNode(node);
+		}
+		
+		/**
+		 * public List<V> stab(int point)
+		 *
+		 * Returns the infos of the intervals that contain point, ordered by interval,
+		 * in O(min(n, (k + 1) log n)) for k results, see overlapping.
+		 */
+		public List<V> stab(int point)
+		{
+			return this.overlapping(point, point);
+		}
+		
+		/**
+		 * public List<V> overlapping(int lo, int hi)
+		 *
+		 * Returns the infos of the intervals that share a point with [lo, hi], ordered by interval,
+		 * in O(min(n, (k + 1) log n)) for k results: the search follows one path of length O(log n)
+		 * per result, plus one to find that there are no more.
+		 */
+		public List<V> overlapping(int lo, int hi)
+		{
+			List<V> result = new ArrayList<V>();
+			this.collectOverlapping(this.root, lo, hi, result);
+			return result;
+		}
+		
+		/**
+		 * public boolean overlapsAny(int lo, int hi)
+		 *
+		 * Returns true if some interval shares a point with [lo, hi], in O(log n).
+		 * If the left subtree reaches lo, an overlap is either there or nowhere,
+		 * since all intervals to the right start after the one in the left subtree that reaches lo.
+		 */
+		public boolean overlapsAny(int lo, int hi)
+		{
+			Node current = this.root;
+			while(current != null)
+			{
+				IntervalNode node = (IntervalNode) current;
+				if(node.start <= hi && lo <= node.end)
+				{
+					return true;
+				}
+				if(node.left != null && ((IntervalNode) node.left).maxEnd >= lo)
+				{
+					current = node.left;
+				}
+				else
+				{
+					current = node.right;
+				}
+			}
+			return false;
+		}
+		
+		// adds the overlapping intervals of the subtree of current to result, in order
+		private void collectOverlapping(Node current, int lo, int hi, List<V> result)
+		{
+			while(current != null && ((IntervalNode) current).maxEnd >= lo)
+			{
+				IntervalNode node = (IntervalNode) current;
+				this.collectOverlapping(node.left, lo, hi, result);
+				if(node.start > hi)
+				{
+					return;
+				}
+				if(lo <= node.end)
+				{
+					result.add(node.value);
+				}
+				current = node.right;
+			}
+		}
+		
+		private int compare(int start, int end, IntervalNode node)
+		{
+			if(start != node.start)
+			{
+				return (start < node.start) ? -1 : 1;
+			}
+			return (end == node.end) ? 0 : ((end < node.end) ? -1 : 1);
+		}
+		
+		private IntervalNode searchNode(int start, int end)
+		{
+			Node current = this.root;
+			while(current != null)
+			{
+				int comparison = this.compare(start, end, (IntervalNode) current);
+				if(comparison == 0)
+				{
+					return (IntervalNode) current;
+				}
+				current = (comparison < 0) ? current.left : current.right;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * public WAVLTree fromSorted(int[] keys, String[] values)
+	 *
+	 * Returns a new WAVL tree holding the items (keys[j], values[j]), built in O(n).
+	 * keys must be strictly increasing, see WAVLTree.loadSorted.
+	 */
+	public WAVLTree fromSorted(int[] keys, String[] values)
+	{
+		WAVLTree tree = new WAVLTree();
+		tree.loadSorted(keys, values, false);
+		return tree;
+	}
+	
+	/**
+	 * public WAVLTree parallelFromSorted(int[] keys, String[] values)
+	 *
+	 * Same as fromSorted, building large subtrees in parallel in the common fork-join pool.
+	 */
+	public WAVLTree parallelFromSorted(int[] keys, String[] values)
+	{
+		WAVLTree tree = new WAVLTree();
+		tree.loadSorted(keys, values, true);
+		return tree;
+	}
+	
+	/**
+	 * public WAVLTree readTree(ReadableByteChannel channel)
+	 *
+	 * Returns the tree stored in channel by WAVLTree.writeTo, rebuilt in O(n), see WAVLTreeFormat.
+	 */
+	public WAVLTree readTree(ReadableByteChannel channel) throws IOException
+	{
+		return new WAVLTreeFormat().read(channel);
+	}
+
+	public static void main(String[] args)
+	{
+		WAVLTree_itayshalev_eyalpintzov forest = new WAVLTree_itayshalev_eyalpintzov();
+		if(args.length > 0 && args[0].equals("bench"))
+		{
+			int[] sizes = {1000, 100000, 1000000};
+			if(args.length > 1)
+			{
+				sizes = new int[args.length - 1];
+				for(int i = 1; i < args.length; i++)
+				{
+					sizes[i - 1] = Integer.parseInt(args[i]);
+				}
+			}
+			forest.new WAVLBenchmark().run(sizes);
+			return;
+		}
+		if(args.length > 0 && args[0].equals("shardbench"))
+		{
+			int operations = (args.length > 1) ? Integer.parseInt(args[1]) : 4000000;
+			int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+			try
+			{
+				forest.new WAVLBenchmark().runSharded(operations, threads);
+			}
+			catch(InterruptedException e)
+			{
+				throw new RuntimeException(e);
+			}
+			return;
+		}
+		if(args.length > 0 && args[0].equals("mvccbench"))
+		{
+			int operations = (args.length > 1) ? Integer.parseInt(args[1]) : 1000000;
+			try
+			{
+				forest.new WAVLBenchmark().runMVCC(operations);
+			}
+			catch(InterruptedException e)
+			{
+				throw new RuntimeException(e);
+			}
+			return;
+		}
+		if(args.length > 0 && args[0].equals("walbench"))
+		{
+			int operations = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+			int threads = (args.length > 2) ? Integer.parseInt(args[2]) : 8;
+			try
+			{
+				forest.new WAVLBenchmark().runDurable(operations, threads);
+			}
+			catch(IOException | InterruptedException e)
+			{
+				throw new RuntimeException(e);
+			}
+			return;
+		}
 		WAVLTree tree = forest.new WAVLTree();
 		/*tree.insert(4, "4");
 		tree.insert(5, "5");